@@ -0,0 +1,134 @@
+import utils.Building;
+import utils.TraceChecker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 批量回放:在一个JVM中并行运行多组配置与多份输入的所有组合,按配置汇总性能指标
+ * 每个组合是一次独立的{@link Simulation},使用虚拟时间,在ForkJoinPool上按CPU核数并行执行。
+ * 用法:
+ * <pre>
+ * java -cp out:code.jar BatchRunner [-b 建筑配置] [-s 毫秒] [-p 配置项=值1,值2 ...] 输入文件 ...
+ * </pre>
+ * 例如 -p elevator.dispatch=fixed,global -p elevator.direction=look,aging 会对每份输入运行4次,
+ * 最后每组配置输出一行:运行次数、错误数,以及T、WT、power的平均值。
+ * 加上 -s 60000 时,每份输入先以默认配置预热到60000ms并保存快照,各组配置都从该快照分叉继续,
+ * 指标只统计快照之后的输出
+ */
+public class BatchRunner {
+    public static void main(String[] args) {
+        Properties buildingConfig = new Properties();
+        // 按出现顺序保存参数名及其取值
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        List<String> traces = new ArrayList<>();
+        // 预热阶段的长度,单位ms,为负时不预热
+        long warmUp = -1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("-b".equals(args[i]) && i + 1 < args.length) {
+                    try (InputStream in = Files.newInputStream(Paths.get(args[++i]))) {
+                        buildingConfig.load(in);
+                    }
+                } else if ("-s".equals(args[i]) && i + 1 < args.length) {
+                    warmUp = Long.parseLong(args[++i]);
+                } else if ("-p".equals(args[i]) && i + 1 < args.length) {
+                    String[] pair = args[++i].split("=", 2);
+                    parameters.put(pair[0], pair.length > 1 ? pair[1].split(",") : new String[]{""});
+                } else {
+                    traces.add(new String(Files.readAllBytes(Paths.get(args[i])),
+                            StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (traces.isEmpty()) {
+            System.err.println("usage: java BatchRunner [-b <building>] [-s <millis>] "
+                    + "[-p key=v1,v2 ...] <input> ...");
+            return;
+        }
+        Building building = Building.parse(buildingConfig);
+        List<Properties> combinations = combine(parameters);
+        List<ForkJoinTask<TraceChecker.Report>> tasks = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        List<ForkJoinTask<Snapshot>> snapshots = new ArrayList<>();
+        for (String trace : traces) {
+            long time = warmUp;
+            snapshots.add(pool.submit(() -> time < 0 ? null
+                    : Simulation.capture(building, new Properties(), trace, time)));
+        }
+        for (Properties properties : combinations) {
+            for (int i = 0; i < traces.size(); i++) {
+                String trace = traces.get(i);
+                ForkJoinTask<Snapshot> snapshot = snapshots.get(i);
+                tasks.add(pool.submit(() -> new Simulation(building, properties, trace,
+                        snapshot.join()).run()));
+            }
+        }
+        int index = 0;
+        for (Properties properties : combinations) {
+            int runs = 0;
+            int errors = 0;
+            double totalTime = 0;
+            double weightedTime = 0;
+            double power = 0;
+            for (int i = 0; i < traces.size(); i++) {
+                TraceChecker.Report report = tasks.get(index++).join();
+                if (report == null) {
+                    continue;
+                }
+                runs++;
+                errors += report.getErrors();
+                totalTime += report.getTotalTime();
+                weightedTime += report.getWeightedTime();
+                power += report.getPower();
+            }
+            StringBuilder label = new StringBuilder("{");
+            for (String key : parameters.keySet()) {
+                label.append(label.length() > 1 ? ", " : "").append(key).append('=')
+                        .append(properties.getProperty(key));
+            }
+            System.out.printf("%s} runs=%d errors=%d T=%.4f WT=%.4f power=%.1f%n",
+                    label, runs, errors,
+                    totalTime / Math.max(runs, 1), weightedTime / Math.max(runs, 1),
+                    power / Math.max(runs, 1));
+        }
+        pool.shutdown();
+        System.err.printf("%d simulations in %.3fs%n", tasks.size(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * 展开所有参数取值的笛卡尔积,没有参数时只有一组空配置
+     */
+    private static List<Properties> combine(Map<String, String[]> parameters) {
+        List<Properties> result = new ArrayList<>();
+        result.add(new Properties());
+        for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+            List<Properties> next = new ArrayList<>();
+            for (Properties base : result) {
+                for (String value : entry.getValue()) {
+                    Properties properties = new Properties();
+                    properties.putAll(base);
+                    properties.setProperty(entry.getKey(), value);
+                    next.add(properties);
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+}
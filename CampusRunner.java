@@ -0,0 +1,94 @@
+import utils.TraceChecker;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 园区模拟:把一份园区输入按分区路由,各分区在虚拟时间上并行模拟,输出各分区和整个园区的性能指标
+ * 用法:
+ * <pre>
+ * java -cp out:code.jar CampusRunner -c 园区配置 [-p 配置项=值 ...] [-t 线程数]
+ *      [-o 合并输出文件] [-m 指标文件] 输入文件
+ * </pre>
+ * 园区配置的格式见{@link Campus};线程数默认为CPU核数。
+ * 园区的电梯统一编号,例如4个默认建筑的分区共24部电梯,可以这样生成负载:
+ * <pre>
+ * echo elevators=24 > load.properties
+ * java -Delevator.building=load.properties -cp out:code.jar LoadGenerator count=10000 -o load.txt
+ * </pre>
+ */
+public class CampusRunner {
+    public static void main(String[] args) {
+        String config = null;
+        Properties properties = new Properties();
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = null;
+        String metrics = null;
+        String input = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("-c".equals(args[i]) && i + 1 < args.length) {
+                config = args[++i];
+            } else if ("-p".equals(args[i]) && i + 1 < args.length) {
+                String[] pair = args[++i].split("=", 2);
+                properties.setProperty(pair[0], pair.length > 1 ? pair[1] : "");
+            } else if ("-t".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-o".equals(args[i]) && i + 1 < args.length) {
+                output = args[++i];
+            } else if ("-m".equals(args[i]) && i + 1 < args.length) {
+                metrics = args[++i];
+            } else {
+                input = args[i];
+            }
+        }
+        if (config == null || input == null) {
+            System.err.println("usage: java CampusRunner -c <campus> [-p key=value ...] "
+                    + "[-t threads] [-o output] [-m metrics] <input>");
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Campus campus = Campus.load(Paths.get(config));
+            String trace = new String(Files.readAllBytes(Paths.get(input)), StandardCharsets.UTF_8);
+            long start = System.nanoTime();
+            Campus.Result result = campus.run(properties, trace, pool);
+            if (result == null) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            for (int i = 0; i < campus.getZoneCount(); i++) {
+                int first = campus.getFirstElevator(i);
+                int last = i + 1 < campus.getZoneCount()
+                        ? campus.getFirstElevator(i + 1) - 1 : campus.getElevatorCount();
+                System.out.printf("zone %s elevators=%d-%d %s%n", campus.getName(i),
+                        first, last, result.getReport(i));
+            }
+            TraceChecker.Report report = result.getReport();
+            System.out.println("campus " + report);
+            for (String message : report.getMessages()) {
+                System.out.println("  " + message);
+            }
+            if (output != null) {
+                try (Writer out = new BufferedWriter(Files.newBufferedWriter(Paths.get(output),
+                        StandardCharsets.UTF_8), 1 << 16)) {
+                    result.writeOutput(out);
+                }
+            }
+            if (metrics != null) {
+                result.getMetrics().dump(metrics, "campus metrics");
+            }
+            System.err.printf("%d zones on %d threads in %.3fs%n", campus.getZoneCount(),
+                    threads, elapsed / 1e9);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
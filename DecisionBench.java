@@ -0,0 +1,265 @@
+import utils.Building;
+import utils.Clock;
+import utils.FloorConverter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 调度与电梯决策路径的微基准
+ * 覆盖Scheduler.canEnter、Elevator.chooseDir、Elevator.dunnoFindPriority、Elevator.passengersIn
+ * 以及FloorConverter.floorString2Int,等待队列规模取10、100、10000,
+ * 优先级分布取均匀、偏斜(九成低优先级)和全部相同三种。
+ * 每项先预热再计时,报告每次调用的耗时、每次调用分配的字节数以及计时期间的GC次数和耗时。
+ * <p>
+ * 与TestMain一样放在默认包中,以便直接访问电梯和调度器;私有的passengersIn和电梯状态通过MethodHandle访问。
+ * 调度器中的电梯线程不会真正启动,所有决策方法都在主线程上对1号电梯的等待队列调用。
+ * 编译运行方式:
+ * <pre>
+ * javac -cp code.jar -d out $(find src -name '*.java') DecisionBench.java
+ * java -cp out:code.jar DecisionBench [基准名称的子串]
+ * </pre>
+ */
+public class DecisionBench {
+    private static final int[] SIZES = {10, 100, 10000};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 5;
+    private static final long ROUND_NANOS = 200_000_000L;
+    // 每批调用次数,批与批之间才读取时间,避免计时本身干扰被测代码
+    private static final int BATCH = 256;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // 防止被测代码的结果被JIT当作无用代码消除
+    private static volatile long sink;
+
+    private enum Distribution {
+        // 优先级在1到100之间均匀分布
+        UNIFORM,
+        // 九成乘客优先级在1到10之间,其余在91到100之间
+        SKEWED,
+        // 所有乘客优先级相同
+        CONSTANT;
+
+        int next(Random random) {
+            switch (this) {
+                case UNIFORM:
+                    return 1 + random.nextInt(100);
+                case SKEWED:
+                    return random.nextInt(10) < 9 ? 1 + random.nextInt(10) : 91 + random.nextInt(10);
+                default:
+                    return 50;
+            }
+        }
+    }
+
+    /**
+     * 被测操作,参数为调用序号,返回值汇入sink
+     */
+    private interface Operation {
+        long run(int i) throws Throwable;
+    }
+
+    private final Elevator elevator;
+    private final WaitingLine line;
+    private final MethodHandle passengersIn;
+    private final VarHandle currentFloor;
+    private final VarHandle currentNum;
+    private final VarHandle direction;
+    private final Cabin cabin;
+    private final List<?> outputs;
+    // 建筑中的所有楼层,按下标排列
+    private final int[] floors;
+
+    private DecisionBench() throws ReflectiveOperationException {
+        // 受管理的线程一律替换为空任务,电梯不会自行运行而改动被测的等待队列
+        Clock.getInstance().setThreadFactory(task -> new Thread(() -> {
+        }));
+        elevator = new Elevator(Building.getInstance().getElevators().get(0), new LookPolicy());
+        line = Scheduler.getInstance().getWaitingLine(elevator.getId());
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(Elevator.class, MethodHandles.lookup());
+        passengersIn = lookup.findVirtual(Elevator.class, "passengersIn", MethodType.methodType(void.class));
+        currentFloor = lookup.findVarHandle(Elevator.class, "currentFloor", int.class);
+        currentNum = lookup.findVarHandle(Elevator.class, "currentNum", int.class);
+        direction = lookup.findVarHandle(Elevator.class, "direction", Direction.class);
+        cabin = (Cabin) lookup.findVarHandle(Elevator.class, "cabin", Cabin.class).get(elevator);
+        outputs = (List<?>) lookup.findVarHandle(Elevator.class, "outputs", ArrayList.class).get(elevator);
+        floors = new int[FloorConverter.numFloors()];
+        for (int i = 0; i < floors.length; i++) {
+            floors[i] = FloorConverter.index2Floor(i);
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        String filter = args.length > 0 ? args[0] : "";
+        DecisionBench bench = new DecisionBench();
+        System.out.printf("%-20s %6s %-9s %12s %10s %10s %6s %8s%n",
+                "benchmark", "size", "priority", "ns/op", "error", "B/op", "gc", "gcMs");
+        bench.runAll(filter);
+    }
+
+    private void runAll(String filter) throws Throwable {
+        if ("floorString2Int".contains(filter)) {
+            String[] labels = new String[floors.length];
+            for (int i = 0; i < floors.length; i++) {
+                labels[i] = FloorConverter.floorInt2String(floors[i]);
+            }
+            measure("floorString2Int", 0, null,
+                    i -> FloorConverter.floorString2Int(labels[i % labels.length]));
+        }
+        for (int size : SIZES) {
+            for (Distribution distribution : Distribution.values()) {
+                if ("canEnter".contains(filter)) {
+                    fill(size, distribution, 1);
+                    measure("canEnter", size, distribution, i -> Scheduler.getInstance()
+                            .canEnter(elevator, floors[i % floors.length], false) ? 1 : 0);
+                }
+                if ("chooseDir".contains(filter)) {
+                    fill(size, distribution, 2);
+                    measure("chooseDir", size, distribution, i -> {
+                        currentFloor.setVolatile(elevator, floors[i % floors.length]);
+                        direction.setVolatile(elevator, (i & 1) == 0 ? Direction.UP : Direction.DOWN);
+                        elevator.chooseDir();
+                        return elevator.getDirection().ordinal();
+                    });
+                }
+                if ("dunnoFindPriority".contains(filter)) {
+                    fill(size, distribution, 3);
+                    measure("dunnoFindPriority", size, distribution, i -> {
+                        currentFloor.setVolatile(elevator, floors[i % floors.length]);
+                        elevator.dunnoFindPriority();
+                        return elevator.getDirection().ordinal();
+                    });
+                }
+                if ("passengersIn".contains(filter)) {
+                    fill(size, distribution, 4);
+                    measure("passengersIn", size, distribution, i -> {
+                        int floor = floors[i % floors.length];
+                        currentFloor.setVolatile(elevator, floor);
+                        direction.setVolatile(elevator, (i & 1) == 0 ? Direction.UP : Direction.DOWN);
+                        passengersIn.invokeExact(elevator);
+                        return reboard();
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * 把本次上车的乘客放回等待队列并清空轿厢,使每次调用面对同样规模的队列
+     */
+    private long reboard() {
+        long boarded = (int) currentNum.getVolatile(elevator);
+        for (int floor : floors) {
+            int count = cabin.countAt(floor);
+            for (int j = 0; j < count; j++) {
+                line.add(cabin.riderAt(floor, j));
+            }
+            cabin.clear(floor);
+        }
+        currentNum.setVolatile(elevator, 0);
+        outputs.clear();
+        return boarded;
+    }
+
+    /**
+     * 清空电梯1的等待队列,再按指定的规模和优先级分布随机放入乘客
+     */
+    private void fill(int size, Distribution distribution, long seed) {
+        Random random = new Random(seed);
+        synchronized (line) {
+            line.drain();
+            line.extract(passenger -> true, Integer.MAX_VALUE);
+            for (int i = 0; i < size; i++) {
+                int from = floors[random.nextInt(floors.length)];
+                int to;
+                do {
+                    to = floors[random.nextInt(floors.length)];
+                } while (to == from);
+                line.add(new Passenger(i + 1, from, to, distribution.next(random),
+                        elevator.getId(), i));
+            }
+        }
+    }
+
+    private void measure(String name, int size, Distribution distribution, Operation operation)
+            throws Throwable {
+        // 与电梯决策时的条件一致,计时期间持有等待队列的监视器
+        synchronized (line) {
+            int counter = 0;
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                counter = round(operation, counter, new double[1]);
+            }
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            int start = counter;
+            double[] nanosPerOp = new double[MEASURE_ROUNDS];
+            double[] result = new double[1];
+            for (int round = 0; round < MEASURE_ROUNDS; round++) {
+                counter = round(operation, counter, result);
+                nanosPerOp[round] = result[0];
+            }
+            // 计时结束后再读取,读取本身分配的少量字节被均摊到数百万次调用上
+            double bytesPerOp = (double) (THREADS.getCurrentThreadAllocatedBytes() - allocated)
+                    / (counter - start);
+            double mean = 0;
+            for (double value : nanosPerOp) {
+                mean += value / MEASURE_ROUNDS;
+            }
+            double variance = 0;
+            for (double value : nanosPerOp) {
+                variance += (value - mean) * (value - mean) / (MEASURE_ROUNDS - 1);
+            }
+            System.out.printf("%-20s %6s %-9s %12.1f %10.1f %10.1f %6d %8d%n", name,
+                    size == 0 ? "-" : String.valueOf(size),
+                    distribution == null ? "-" : distribution.name().toLowerCase(),
+                    mean, Math.sqrt(variance), bytesPerOp,
+                    gcCount() - gcCount, gcMillis() - gcMillis);
+        }
+    }
+
+    /**
+     * 连续调用被测操作约ROUND_NANOS纳秒
+     *
+     * @return 下一次调用的序号,本轮的平均耗时写入result[0]
+     */
+    private static int round(Operation operation, int counter, double[] result) throws Throwable {
+        long accumulated = 0;
+        long begin = System.nanoTime();
+        long now = begin;
+        int calls = 0;
+        while (now - begin < ROUND_NANOS) {
+            for (int i = 0; i < BATCH; i++) {
+                accumulated += operation.run(counter++);
+            }
+            calls += BATCH;
+            now = System.nanoTime();
+        }
+        sink += accumulated;
+        result[0] = (double) (now - begin) / calls;
+        return counter;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+}
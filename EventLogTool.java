@@ -0,0 +1,60 @@
+import utils.EventLogReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * 读取 -Delevator.events=文件 写出的二进制事件日志
+ * 用法:
+ * <pre>
+ * java -cp out:code.jar EventLogTool text 日志文件          还原为评测格式的文本输出
+ * java -cp out:code.jar EventLogTool elevator 日志文件 ID   某部电梯的全部事件
+ * java -cp out:code.jar EventLogTool passenger 日志文件 ID  某位乘客的全部事件
+ * </pre>
+ * 例如
+ * <pre>
+ * java -Delevator.events=events.bin -cp out:code.jar TestMain in.txt out.txt max
+ * java -cp out:code.jar EventLogTool text events.bin | diff - out.txt
+ * </pre>
+ */
+public class EventLogTool {
+    public static void main(String[] args) {
+        if (args.length < 2 || !args[0].equals("text") && args.length < 3) {
+            System.err.println("usage: java EventLogTool text <log> | elevator <log> <id>"
+                    + " | passenger <log> <id>");
+            return;
+        }
+        try (EventLogReader reader = new EventLogReader(Paths.get(args[1]));
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            switch (args[0]) {
+                case "text":
+                    reader.writeText(out);
+                    break;
+                case "elevator":
+                    print(reader, reader.byElevator(Integer.parseInt(args[2])), out);
+                    break;
+                case "passenger":
+                    print(reader, reader.byPassenger(Integer.parseInt(args[2])), out);
+                    break;
+                default:
+                    System.err.println("Unknown command " + args[0]);
+                    break;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void print(EventLogReader reader, int[] events, Writer out)
+            throws IOException {
+        for (int i : events) {
+            out.write(String.format("[%9.4f]%s%n", reader.time(i) / 1e9, reader.message(i)));
+        }
+        out.flush();
+    }
+}
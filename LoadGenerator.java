@@ -0,0 +1,281 @@
+import utils.Building;
+import utils.Building.ElevatorSpec;
+import utils.FloorConverter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * 可复现的负载生成器,输出形如"[1.250]1-PRI-15-FROM-F1-TO-F3-BY-2"的带时间戳请求流
+ * 到达过程、客流模式、优先级分布和指定电梯的偏斜程度都可配置,相同的配置与种子总是生成相同的请求流。
+ * 请求逐行生成并写出,不在内存中保存,生成数百万条请求也只占用常数内存。
+ * 用法:
+ * <pre>
+ * java -cp out:code.jar LoadGenerator [配置项=值 ...] [-o 输出文件]
+ * java -cp out:code.jar LoadGenerator count=100000 rate=50 -o load.txt
+ * java -cp out:code.jar TestMain load.txt out.txt max
+ * java -cp out:code.jar LoadGenerator pattern=uppeak | java -Delevator.clock=virtual -cp out:code.jar MainClass
+ * </pre>
+ * 配置项:
+ * <ul>
+ *     <li>count 请求数,默认100</li>
+ *     <li>rate 平均到达率,单位 次/s,默认2</li>
+ *     <li>seed 随机种子,默认1</li>
+ *     <li>start 第一个请求之前的时刻,单位s,默认1.0</li>
+ *     <li>arrival 到达过程:poisson(默认,泊松到达)或bursty(高低两种到达率交替,平均到达率不变)</li>
+ *     <li>pattern 客流模式:interfloor(默认,任意两层之间)、uppeak(多数从大堂出发上行)
+ *     或downpeak(多数下行到大堂)</li>
+ *     <li>priority 优先级分布:uniform(默认,1到100均匀)、skewed(九成在1到10,其余在91到100)
+ *     或1到100之间的整数(全部相同)</li>
+ *     <li>skew 指定电梯的偏斜指数s,第i部电梯被指定的概率与1/i^s成正比,默认0即均匀</li>
+ * </ul>
+ * 楼层和电梯取自当前建筑(-Delevator.building),请求只在所指定电梯停靠的楼层之间产生。
+ * 评测库的输入解析只接受默认建筑的楼层和电梯,回放其他建筑的负载需要其他输入途径
+ */
+public class LoadGenerator {
+    // 大堂所在楼层,高峰客流的起点或终点
+    private static final int LOBBY = 1;
+    // 高峰期经过大堂的请求比例,其余为层间客流
+    private static final double PEAK_SHARE = 0.85;
+    // 突发到达:高到达率阶段的到达率是平均值的BURST_FACTOR倍,低到达率阶段是平均值的1/BURST_FACTOR,
+    // 高到达率阶段平均持续BURST_LENGTH,低到达率阶段平均持续BURST_LENGTH*BURST_FACTOR,
+    // 使长期平均到达率仍为rate
+    private static final double BURST_FACTOR = 4;
+    private static final double BURST_LENGTH = 2000; // unit: ms
+    private final SplittableRandom random;
+    private final long count;
+    private final double rate;
+    private final boolean bursty;
+    private final String pattern;
+    // 优先级分布,constantPriority大于0时所有请求都取该值
+    private final boolean skewedPriority;
+    private final int constantPriority;
+    // 各电梯被指定的累积概率,按ID排列
+    private final double[] cumulative;
+    // 各电梯停靠的楼层,以及是否停靠大堂
+    private final int[][] stops;
+    private final boolean[] lobby;
+    // 预先生成的楼层字符串,下标由floor2Index给出
+    private final String[] labels;
+    private final int minFloor;
+    private final StringBuilder line;
+    // 当前时刻,单位ms
+    private double now;
+    // 突发到达时当前阶段是否为高到达率,以及该阶段的结束时刻
+    private boolean burst;
+    private double phaseEnd;
+    private long generated;
+
+    /**
+     * @param building 建筑,提供楼层范围和各电梯的停靠楼层
+     * @param options  配置项,见类说明,缺省的配置项取默认值
+     * @throws IllegalArgumentException 如果配置不合法
+     */
+    public LoadGenerator(Building building, Properties options) {
+        random = new SplittableRandom(Long.parseLong(options.getProperty("seed", "1").trim()));
+        count = Long.parseLong(options.getProperty("count", "100").trim());
+        rate = Double.parseDouble(options.getProperty("rate", "2").trim());
+        String arrival = options.getProperty("arrival", "poisson").trim();
+        pattern = options.getProperty("pattern", "interfloor").trim();
+        String priority = options.getProperty("priority", "uniform").trim();
+        double skew = Double.parseDouble(options.getProperty("skew", "0").trim());
+        if (count < 0 || rate <= 0 || skew < 0
+                || !arrival.equals("poisson") && !arrival.equals("bursty")
+                || !pattern.equals("interfloor") && !pattern.equals("uppeak")
+                && !pattern.equals("downpeak")) {
+            throw new IllegalArgumentException("Bad load options");
+        }
+        skewedPriority = priority.equals("skewed");
+        constantPriority = priority.equals("uniform") || skewedPriority
+                ? 0 : Integer.parseInt(priority);
+        if (constantPriority < 0 || constantPriority > 100) {
+            throw new IllegalArgumentException("Bad priority");
+        }
+        bursty = arrival.equals("bursty");
+        minFloor = building.getMinFloor();
+        labels = new String[building.getNumFloors()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = building.getLabel(i);
+        }
+        List<ElevatorSpec> specs = building.getElevators();
+        cumulative = new double[specs.size()];
+        stops = new int[specs.size()][];
+        lobby = new boolean[specs.size()];
+        double sum = 0;
+        for (int i = 0; i < specs.size(); i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+            List<Integer> floors = new ArrayList<>();
+            for (int index = 0; index < labels.length; index++) {
+                if (specs.get(i).stopsAt(FloorConverter.index2Floor(index, minFloor))) {
+                    floors.add(FloorConverter.index2Floor(index, minFloor));
+                }
+            }
+            if (floors.size() < 2) {
+                throw new IllegalArgumentException("Elevator " + (i + 1) + " has too few stops");
+            }
+            stops[i] = floors.stream().mapToInt(Integer::intValue).toArray();
+            lobby[i] = specs.get(i).stopsAt(LOBBY);
+        }
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= sum;
+        }
+        now = Double.parseDouble(options.getProperty("start", "1.0").trim()) * 1000;
+        burst = true;
+        phaseEnd = now + exponential(BURST_LENGTH);
+        line = new StringBuilder(64);
+    }
+
+    /**
+     * 写出全部请求,每行一条
+     *
+     * @param out 输出目标,由调用方负责缓冲和关闭
+     * @throws IOException 写出失败
+     */
+    public void write(Writer out) throws IOException {
+        while (hasNext()) {
+            out.append(next()).append('\n');
+        }
+        out.flush();
+    }
+
+    public boolean hasNext() {
+        return generated < count;
+    }
+
+    /**
+     * 生成下一条请求
+     *
+     * @return 不含换行符的一行,在下一次调用前有效
+     */
+    public CharSequence next() {
+        advance();
+        int elevator = pickElevator();
+        int[] floors = stops[elevator];
+        int from = floors[random.nextInt(floors.length)];
+        int to = floors[random.nextInt(floors.length - 1)];
+        if (to == from) {
+            // 跳过出发楼层,在其余楼层中均匀选取
+            to = floors[floors.length - 1];
+        }
+        if (lobby[elevator] && random.nextDouble() < PEAK_SHARE) {
+            if (pattern.equals("uppeak")) {
+                from = LOBBY;
+                if (to == LOBBY) {
+                    to = floors[pickOther(floors)];
+                }
+            } else if (pattern.equals("downpeak")) {
+                to = LOBBY;
+                if (from == LOBBY) {
+                    from = floors[pickOther(floors)];
+                }
+            }
+        }
+        generated++;
+        long millis = (long) now;
+        line.setLength(0);
+        line.append('[').append(millis / 1000).append('.');
+        long fraction = millis % 1000;
+        if (fraction < 100) {
+            line.append('0');
+        }
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction).append(']').append(generated)
+                .append("-PRI-").append(nextPriority())
+                .append("-FROM-").append(labels[FloorConverter.floor2Index(from, minFloor)])
+                .append("-TO-").append(labels[FloorConverter.floor2Index(to, minFloor)])
+                .append("-BY-").append(elevator + 1);
+        return line;
+    }
+
+    /**
+     * 把当前时刻推进到下一个请求的到达时刻
+     */
+    private void advance() {
+        if (!bursty) {
+            now += exponential(1000 / rate);
+            return;
+        }
+        // 指数分布无记忆,跨过阶段边界时从边界起按新阶段的到达率重新抽样即可
+        while (true) {
+            double current = burst ? rate * BURST_FACTOR : rate / BURST_FACTOR;
+            double next = now + exponential(1000 / current);
+            if (next <= phaseEnd) {
+                now = next;
+                return;
+            }
+            now = phaseEnd;
+            burst = !burst;
+            phaseEnd = now + exponential(burst ? BURST_LENGTH : BURST_LENGTH * BURST_FACTOR);
+        }
+    }
+
+    private int pickElevator() {
+        double u = random.nextDouble();
+        for (int i = 0; i < cumulative.length - 1; i++) {
+            if (u < cumulative[i]) {
+                return i;
+            }
+        }
+        return cumulative.length - 1;
+    }
+
+    /**
+     * @return 除大堂之外随机一层在floors中的下标
+     */
+    private int pickOther(int[] floors) {
+        while (true) {
+            int index = random.nextInt(floors.length);
+            if (floors[index] != LOBBY) {
+                return index;
+            }
+        }
+    }
+
+    private int nextPriority() {
+        if (constantPriority > 0) {
+            return constantPriority;
+        }
+        if (skewedPriority) {
+            return random.nextInt(10) < 9 ? 1 + random.nextInt(10) : 91 + random.nextInt(10);
+        }
+        return 1 + random.nextInt(100);
+    }
+
+    private double exponential(double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    public static void main(String[] args) {
+        Properties options = new Properties();
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("-o".equals(args[i]) && i + 1 < args.length) {
+                output = args[++i];
+            } else if (args[i].contains("=")) {
+                String[] pair = args[i].split("=", 2);
+                options.setProperty(pair[0], pair[1]);
+            } else {
+                System.err.println("usage: java LoadGenerator [key=value ...] [-o <output>]");
+                return;
+            }
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(output == null ? System.out
+                : Files.newOutputStream(Paths.get(output)), StandardCharsets.UTF_8), 1 << 16)) {
+            new LoadGenerator(Building.getInstance(), options).write(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,130 +1,62 @@
-import java.io.*;
-import java.rmi.server.ExportException;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Objects;
-import java.util.Queue;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-public class TestMain {
-    public static void main(String[] args) {
-        File file = new File("C:\\Users\\Liu Xinyu\\PycharmProjects\\BUAA_OO_2025_unit2_judge\\input.txt");
-        File outputFile = new File("C:\\Users\\Liu Xinyu\\PycharmProjects\\BUAA_OO_2025_unit2_judge\\output.txt");
-        try {
-            Scanner scanner = new Scanner(file);
-            ArrayList<String> lines = new ArrayList<>();
-            while (scanner.hasNextLine()) {
-                lines.add(scanner.nextLine());
-            }
-            System.setIn(new TimeInputStream(lines));
-
-            // --- Setup Output Redirection ---
-            FileOutputStream fos = new FileOutputStream(outputFile); // 2. Create stream to file
-            PrintStream fileOut = new PrintStream(fos, true); // true for autoFlush (optional)
-            System.setOut(fileOut); // 3. Redirect System.out
-
-
-            MainClass.main(args);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    private static class Pair<K, V> {
-        private final K first;
-        private final V second;
-
-        Pair(K first, V second) {
-            this.first = first;
-            this.second = second;
-        }
-
-        public K getFirst() {
-            return first;
-        }
-
-        public V getSecond() {
-            return second;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) { return true; }
-            if (obj == null || getClass() != obj.getClass()) { return false; }
-            Pair<?, ?> pair = (Pair<?, ?>) obj;
-            return Objects.equals(first, pair.first) && Objects.equals(second, pair.second);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(first, second);
-        }
-
-        @Override
-        public String toString() {
-            return "<" + first + ", " + second + ">";
-        }
-    }
-
-    private static class TimeInputStream extends InputStream {
-        private static final Pattern pattern = Pattern.compile("\\[(.*?)](.*)");
-        private final Queue<Pair<Long, String>> data = new ArrayDeque<>();
-        private final Queue<Integer> cache = new ArrayDeque<>();
-
-        TimeInputStream(ArrayList<String> lines) {
-            final long initTime = System.currentTimeMillis();
-            for (String line : lines) {
-                Matcher matcher = pattern.matcher(line);
-                if (matcher.find()) {
-                    long time = (long) (Double.parseDouble(matcher.group(1)) * 1000 + 0.5);
-                    String content = matcher.group(2);
-                    data.add(new Pair<>(initTime + time, content));
-                } else {
-                    throw new RuntimeException("Invalid input: " + line);
-                }
-            }
-        }
-
-        @Override
-        public int read() throws IOException {
-            if (cache.isEmpty()) {
-                if (data.isEmpty()) { return -1; }
-                try {
-                    long time = data.peek().getFirst() - System.currentTimeMillis();
-                    if (time > 0) { Thread.sleep(time); }
-                    String content = Objects.requireNonNull(data.poll()).getSecond();
-                    content.chars().forEach(cache::add);
-                    cache.add(10);
-                } catch (InterruptedException e) {
-                    throw new IOException(e);
-                }
-            }
-            return Objects.requireNonNull(cache.poll());
-        }
-
-        @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            if (b == null) {
-                throw new NullPointerException();
-            } else if (off < 0 || len < 0 || len > b.length - off) {
-                throw new IndexOutOfBoundsException();
-            } else if (len == 0) {
-                return 0;
-            }
-
-            int c = read();
-            if (c == -1) { return -1; }
-            b[off] = (byte) c;
-
-            int i = 1;
-            for (; i < len; i++) {
-                if (cache.isEmpty()) { break; }
-                c = read();
-                if (c == -1) { break; }
-                b[off + i] = (byte) c;
-            }
-            return i;
-        }
-    }
-}
\ No newline at end of file
+import utils.TraceChecker;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 回放带时间戳的输入文件,并把输出写入指定文件
+ * 用法: java TestMain 输入文件 输出文件 [倍速]
+ * 倍速可以是1(默认,按真实时间)、10等正数,或者max,表示在虚拟时间上尽快完成
+ * <p>
+ * 输入通过NIO按块读取、按行转换,输出由异步输出线程批量写入文件,
+ * 回放结束后用{@link TraceChecker}检查输出并打印性能指标。
+ * 使用进程级的默认模拟,即标准输入、标准输出和系统属性;在一个JVM中回放多份输入见BatchRunner。
+ * 加上 -Delevator.snapshot=毫秒,文件 保存快照,-Delevator.resume=文件 则从快照继续回放同一输入文件
+ */
+public class TestMain {
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java TestMain <input> <output> [1|10|...|max]");
+            return;
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        String speed = args.length > 2 ? args[2] : "1";
+        if ("max".equals(speed)) {
+            System.setProperty("elevator.clock", "virtual");
+        } else {
+            System.setProperty("elevator.speed", speed);
+        }
+        if (System.getProperty("elevator.output") == null) {
+            System.setProperty("elevator.output", "async");
+        }
+        PrintStream stdout = System.out;
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(
+                Files.newOutputStream(output), 1 << 16), false, StandardCharsets.UTF_8.name())) {
+            System.setIn(Files.newInputStream(input));
+            System.setOut(out);
+            MainClass.main(new String[0]);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            System.setOut(stdout);
+        }
+        try {
+            // 从快照恢复时,检查器先登记快照时刻的状态,只检查之后的输出
+            String resume = System.getProperty("elevator.resume");
+            TraceChecker.Report report = resume == null ? TraceChecker.check(input, output)
+                    : TraceChecker.check(input, output, Snapshot.load(Paths.get(resume))::prepare);
+            System.out.println(report);
+            for (String message : report.getMessages()) {
+                System.out.println("  " + message);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import utils.Building;
+import utils.Clock;
+
+import static utils.FloorConverter.floor2Index;
+import static utils.FloorConverter.index2Floor;
+
+/**
+ * 按优先级和等待时间加权的LOOK策略
+ * 在LOOK决定继续前进时,分别估计继续前进和立即掉头两种走法下每位乘客还要多久才能被接上或送达:
+ * 电梯先扫到这一方向最远的目标楼层,再折返扫到另一方向最远的目标楼层,最后再折返一次,
+ * 沿途按载客量上客,上不了电梯的乘客要再等一整圈。
+ * 两种走法的代价都是Σ权重*时刻,等待乘客计被接上的时刻,电梯内乘客计送达的时刻,
+ * 因此只有身后确实能提前上电梯的乘客才会促成掉头,而前方乘客和电梯内乘客多等的时间都计入掉头的代价。
+ * 乘客的权重为优先级*(已等待时间+基础时间),基础时间远大于通常的等待时间,权重主要由优先级决定,
+ * 等得特别久的乘客权重才会明显增大,不会被一直搁置。
+ * 掉头的代价须明显小于继续前进的代价才会提前掉头,避免两侧接近时来回掉头。
+ * 估计不考虑开关门时间和之后到来的请求
+ * <p>
+ * 实验性策略,默认仍使用{@link LookPolicy}。优先级差异大或负载适中时WT明显下降,例如
+ * priority=skewed的生成负载下降14%至19%;但在优先级均匀的高负载上行高峰等场景下与LOOK持平或更差,
+ * 启用前应先用BatchRunner在目标负载上对比
+ */
+public class AgingPolicy implements DirectionPolicy {
+    // 每位乘客在等待时间之外额外计入的基础时间,单位ms
+    private static final long BASE_WAIT = 60000;
+    // 继续前进的代价超过掉头代价的这一百分比时才掉头
+    private static final long REVERSE_PERCENT = 200;
+    private final LookPolicy look = new LookPolicy();
+    // 所在建筑的最低楼层和楼层数
+    private final int minFloor;
+    private final int numFloors;
+
+    public AgingPolicy() {
+        minFloor = Building.getInstance().getMinFloor();
+        numFloors = Building.getInstance().getNumFloors();
+    }
+
+    @Override
+    public Direction choose(Elevator elevator, Cabin cabin, WaitingLine line) {
+        Direction direction = look.choose(elevator, cabin, line);
+        // 满载时掉头也接不到身后的乘客;LOOK本来就要掉头时无需再比较
+        if (direction != elevator.getDirection() || elevator.full()) {
+            return direction;
+        }
+        Direction opposite = direction == Direction.UP ? Direction.DOWN : Direction.UP;
+        long now = Clock.getInstance().currentTimeMillis() + BASE_WAIT;
+        long keep = sweepCost(elevator, cabin, line, direction, now);
+        long reverse = sweepCost(elevator, cabin, line, opposite, now);
+        if (reverse * REVERSE_PERCENT < keep * 100) {
+            return opposite;
+        }
+        return direction;
+    }
+
+    /**
+     * 电梯从当前楼层先向指定方向扫描时,所有乘客的加权等待代价
+     * 时刻以楼层数计;某一段接上的乘客假定在这一段结束前都已下电梯
+     *
+     * @param elevator  电梯
+     * @param cabin     电梯内的乘客
+     * @param line      电梯的等待队列
+     * @param direction 先扫描的方向
+     * @param now       计算权重的时刻,已加上基础时间
+     * @return Σ权重*被接上或送达的时刻
+     */
+    private long sweepCost(Elevator elevator, Cabin cabin, WaitingLine line,
+                           Direction direction, long now) {
+        int step = direction == Direction.UP ? 1 : -1;
+        int here = floor2Index(elevator.getCurrentFloor(), minFloor);
+        // 以当前楼层为0、扫描方向为正的坐标中,第一段扫到的最远处first和第二段扫到的最远处second
+        int first = 0;
+        int second = 0;
+        for (int index = 0; index < numFloors; index++) {
+            int floor = index2Floor(index, minFloor);
+            if (cabin.hasStopAt(floor) || line.hasWaitingAt(floor)) {
+                int x = (index - here) * step;
+                first = Math.max(first, x);
+                second = Math.min(second, x);
+            }
+        }
+        Direction opposite = direction == Direction.UP ? Direction.DOWN : Direction.UP;
+        long cycle = 2L * (first - second);
+        int capacity = elevator.getCapacity();
+        int riders = elevator.getCurrentNum();
+        long cost = 0;
+        // 第一段:送达前方的乘客,接上前方及本层与扫描方向同向的乘客
+        int load = riders;
+        for (int x = 0; x <= first; x++) {
+            int floor = index2Floor(here + x * step, minFloor);
+            if (x > 0) {
+                riders -= cabin.countAt(floor);
+                load -= cabin.countAt(floor);
+                cost += cabin.riderCostAt(floor, now) * x;
+            }
+            int count = line.countAt(floor, direction);
+            int seats = Math.max(0, Math.min(count, capacity - load));
+            cost += waitCost(line.waitingCostAt(floor, direction, now), count, seats, x, cycle);
+            load += seats;
+        }
+        // 第二段:折返,送达身后的乘客,接上沿途反向的乘客
+        load = riders;
+        for (int x = first; x >= second; x--) {
+            int floor = index2Floor(here + x * step, minFloor);
+            long time = 2L * first - x;
+            if (x < 0) {
+                load -= cabin.countAt(floor);
+                cost += cabin.riderCostAt(floor, now) * time;
+            }
+            int count = line.countAt(floor, opposite);
+            int seats = Math.max(0, Math.min(count, capacity - load));
+            cost += waitCost(line.waitingCostAt(floor, opposite, now), count, seats, time, cycle);
+            load += seats;
+        }
+        // 第三段:再次折返,接上身后与扫描方向同向的乘客
+        load = 0;
+        for (int x = second; x < 0; x++) {
+            int floor = index2Floor(here + x * step, minFloor);
+            long time = cycle + x;
+            int count = line.countAt(floor, direction);
+            int seats = Math.min(count, capacity - load);
+            cost += waitCost(line.waitingCostAt(floor, direction, now), count, seats, time, cycle);
+            load += seats;
+        }
+        return cost;
+    }
+
+    /**
+     * 某层某方向的等待乘客在时刻time到达时的代价,上不了电梯的人按比例推迟一整圈
+     *
+     * @param weight 这些乘客的权重之和
+     * @param count  乘客数
+     * @param seats  能上电梯的人数
+     * @param time   电梯到达的时刻
+     * @param cycle  一整圈的长度
+     */
+    private static long waitCost(long weight, int count, int seats, long time, long cycle) {
+        if (count == 0) {
+            return 0;
+        }
+        return weight * time + weight * (count - seats) / count * cycle;
+    }
+}
@@ -0,0 +1,144 @@
+import utils.Building;
+import utils.SimulationContext;
+
+import static utils.FloorConverter.calFloorDistance;
+import static utils.FloorConverter.floor2Index;
+
+/**
+ * 本层等待人数超过空位时,选出上电梯的乘客
+ * 目标是让有限的座位送出尽量多的优先级:按单位占用时间的优先级从高到低依次选人
+ * (即加权最短处理时间规则),占用时间为乘客乘坐的层数*移动时间,
+ * 若其目的楼层既不是轿厢已有的停靠层、也不是已选乘客的目的楼层,再加上一次开关门的时间。
+ * 因此目的地与已有停靠层重合的乘客更容易被选中,电梯停靠的次数更少。
+ * <p>
+ * 每次开门最多考察按优先级排在前面的{@link #MAX_CANDIDATES}位(载客量更大时为载客量)乘客,
+ * 选人的计算量不超过 候选人数*空位数,与队列规模无关;未被选中的乘客放回等待队列。
+ * 所有人都坐得下时不做选择,与按优先级依次上电梯完全相同。
+ * -Delevator.boarding=priority 时始终按优先级依次上电梯,便于对比。
+ * 只由所属电梯线程访问
+ */
+public class BoardingSelector {
+    // 每次开门最多考察的乘客数
+    private static final int MAX_CANDIDATES = 32;
+    private final Passenger[] candidates;
+    private final boolean[] chosen;
+    private final Passenger[] selected;
+    private int selectedCount;
+    // 是否只按优先级顺序上电梯
+    private final boolean priorityOrder;
+    // 所在建筑的最低楼层,楼层下标以它为0
+    private final int minFloor;
+
+    public BoardingSelector(int capacity) {
+        minFloor = Building.getInstance().getMinFloor();
+        priorityOrder = "priority".equals(
+                SimulationContext.current().getProperty("elevator.boarding"));
+        // 至少能容纳一整厢乘客,坐得下时不会有人因为候选名额不足而留在原地
+        candidates = new Passenger[Math.max(MAX_CANDIDATES, capacity)];
+        chosen = new boolean[candidates.length];
+        selected = new Passenger[capacity];
+    }
+
+    /**
+     * 从等待队列中取出本次上电梯的乘客,通过{@link #selectedAt(int)}依次读取
+     *
+     * @param line      本电梯的等待队列,调用方需持有其监视器
+     * @param elevator  电梯
+     * @param cabin     电梯的轿厢,已让到达的乘客下完
+     * @param bothWays  是否两个方向的乘客都可以上电梯
+     * @return 上电梯的人数
+     */
+    public int select(WaitingLine line, Elevator elevator, Cabin cabin, boolean bothWays) {
+        int floor = elevator.getCurrentFloor();
+        Direction direction = elevator.getDirection();
+        int seats = elevator.getCapacity() - elevator.getCurrentNum();
+        int count = 0;
+        while (count < candidates.length) {
+            Passenger passenger = bothWays ? line.pollBestAt(floor) : line.poll(floor, direction);
+            if (passenger == null) {
+                break;
+            }
+            candidates[count++] = passenger;
+        }
+        selectedCount = 0;
+        if (count <= seats || priorityOrder) {
+            // 候选人已按优先级排好序,前seats位上电梯
+            for (int i = 0; i < count && i < seats; i++) {
+                chosen[i] = true;
+            }
+        } else {
+            choose(elevator, cabin, count, seats);
+        }
+        for (int i = 0; i < count; i++) {
+            if (chosen[i]) {
+                selected[selectedCount++] = candidates[i];
+            } else {
+                line.add(candidates[i]);
+            }
+            candidates[i] = null;
+            chosen[i] = false;
+        }
+        return selectedCount;
+    }
+
+    /**
+     * @param i 序号,从0开始,小于{@link #select}的返回值
+     * @return 第i位上电梯的乘客
+     */
+    public Passenger selectedAt(int i) {
+        Passenger passenger = selected[i];
+        selected[i] = null;
+        return passenger;
+    }
+
+    /**
+     * 贪心地选出seats位乘客,每一步选取 优先级/占用时间 最大者,
+     * 比较时交叉相乘,不做除法;比值相同时选排在前面(优先级更高)的乘客
+     */
+    private void choose(Elevator elevator, Cabin cabin, int count, int seats) {
+        int floor = elevator.getCurrentFloor();
+        // 已选乘客的目的楼层
+        long stops = 0;
+        for (int seat = 0; seat < seats; seat++) {
+            int best = -1;
+            long bestPriority = 0;
+            long bestCost = 1;
+            for (int i = 0; i < count; i++) {
+                if (chosen[i]) {
+                    continue;
+                }
+                Passenger passenger = candidates[i];
+                int to = passenger.getToFloor();
+                long cost = (long) rideFloors(elevator, cabin, floor, to) * elevator.getMoveTime();
+                if ((stops & (1L << floor2Index(to, minFloor))) == 0 && !cabin.hasStopAt(to)) {
+                    cost += elevator.getDoorTime();
+                }
+                if (best < 0 || passenger.getPriority() * bestCost > bestPriority * cost) {
+                    best = i;
+                    bestPriority = passenger.getPriority();
+                    bestCost = cost;
+                }
+            }
+            chosen[best] = true;
+            stops |= 1L << floor2Index(candidates[best].getToFloor(), minFloor);
+        }
+    }
+
+    /**
+     * 乘客在电梯中经过的层数;反向的乘客要先随电梯到达前方最远的停靠层再折返
+     */
+    private static int rideFloors(Elevator elevator, Cabin cabin, int floor, int to) {
+        Direction side = to > floor ? Direction.UP : Direction.DOWN;
+        if (side == elevator.getDirection()) {
+            return calFloorDistance(floor, to);
+        }
+        Integer turn = elevator.getDirection() == Direction.UP
+                ? cabin.highestStop() : cabin.lowestStop();
+        boolean ahead = turn != null
+                && (elevator.getDirection() == Direction.UP ? turn > floor : turn < floor);
+        if (!ahead) {
+            return calFloorDistance(floor, to);
+        }
+        return calFloorDistance(floor, turn) + calFloorDistance(turn, to);
+    }
+}
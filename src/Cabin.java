@@ -0,0 +1,183 @@
+import utils.Building;
+
+import static utils.FloorConverter.floor2Index;
+import static utils.FloorConverter.index2Floor;
+import static utils.FloorConverter.numFloors;
+
+/**
+ * 电梯轿厢内乘客的目的楼层索引
+ * 每个目的楼层下标对应一个长度为载客量的数组和一个计数,
+ * 另用一个位图记录哪些楼层有乘客要下,使"此层是否有人下"、"楼上/楼下是否还有目的地"都成为O(1)的位运算。
+ * 加入和卸下乘客都只读写预先分配的数组,不产生任何对象。
+ * 只由所属电梯线程访问
+ */
+public class Cabin {
+    // 各目的楼层的乘客,只有前counts[i]个元素有效
+    private final Passenger[][] riders;
+    // 各目的楼层乘客进入电梯的时刻,与riders一一对应,单位ms
+    private final long[][] boardTimes;
+    // 各目的楼层的乘客数
+    private final int[] counts;
+    // 各目的楼层乘客的优先级之和,以及优先级与进入时间乘积之和,用于计算加权等待时间
+    private final long[] floorPriority;
+    private final long[] floorStamp;
+    // 所在建筑的最低楼层,楼层下标以它为0
+    private final int minFloor;
+    // 第i位为1表示有乘客要在下标为i的楼层下电梯
+    private long stopMask;
+
+    public Cabin(int capacity) {
+        minFloor = Building.getInstance().getMinFloor();
+        riders = new Passenger[numFloors()][capacity];
+        boardTimes = new long[numFloors()][capacity];
+        counts = new int[numFloors()];
+        floorPriority = new long[numFloors()];
+        floorStamp = new long[numFloors()];
+    }
+
+    /**
+     * 乘客进入轿厢,按其目的楼层登记
+     *
+     * @param passenger 乘客
+     * @param boardTime 进入电梯的时刻,单位ms
+     */
+    public void add(Passenger passenger, long boardTime) {
+        int index = floor2Index(passenger.getToFloor(), minFloor);
+        boardTimes[index][counts[index]] = boardTime;
+        riders[index][counts[index]++] = passenger;
+        floorPriority[index] += passenger.getPriority();
+        floorStamp[index] += (long) passenger.getPriority() * passenger.getEnterTime();
+        stopMask |= 1L << index;
+    }
+
+    /**
+     * @return 指定楼层要下电梯的乘客数
+     */
+    public int countAt(int floor) {
+        return counts[floor2Index(floor, minFloor)];
+    }
+
+    /**
+     * 查看指定楼层要下电梯的第i位乘客,配合{@link #countAt(int)}遍历,无需迭代器
+     *
+     * @param floor 楼层整型形式
+     * @param i     序号,从0开始
+     * @return 乘客
+     */
+    public Passenger riderAt(int floor, int i) {
+        return riders[floor2Index(floor, minFloor)][i];
+    }
+
+    /**
+     * @return 指定楼层要下电梯的第i位乘客进入电梯的时刻,单位ms
+     */
+    public long boardTimeAt(int floor, int i) {
+        return boardTimes[floor2Index(floor, minFloor)][i];
+    }
+
+    /**
+     * 清空指定楼层的乘客,在他们全部下电梯之后调用
+     *
+     * @param floor 楼层整型形式
+     */
+    public void clear(int floor) {
+        int index = floor2Index(floor, minFloor);
+        Passenger[] slots = riders[index];
+        for (int i = 0; i < counts[index]; i++) {
+            // 不再持有已下电梯的乘客
+            slots[i] = null;
+        }
+        counts[index] = 0;
+        floorPriority[index] = 0;
+        floorStamp[index] = 0;
+        stopMask &= ~(1L << index);
+    }
+
+    /**
+     * 指定楼层是否有乘客要下电梯
+     */
+    public boolean hasStopAt(int floor) {
+        return (stopMask & (1L << floor2Index(floor, minFloor))) != 0;
+    }
+
+    /**
+     * 指定楼层之上是否有乘客要下电梯
+     */
+    public boolean hasStopAbove(int floor) {
+        // 分两次左移,楼层下标为63时不会因一次移位64位而变成不移位
+        return (stopMask & ((-1L << floor2Index(floor, minFloor)) << 1)) != 0;
+    }
+
+    /**
+     * 指定楼层之下是否有乘客要下电梯
+     */
+    public boolean hasStopBelow(int floor) {
+        return (stopMask & ((1L << floor2Index(floor, minFloor)) - 1)) != 0;
+    }
+
+    /**
+     * 目的楼层为指定楼层的乘客的优先级加权等待时间之和
+     *
+     * @param floor 楼层整型形式
+     * @param now   计算等待时间的时刻,单位ms
+     */
+    public long riderCostAt(int floor, long now) {
+        int index = floor2Index(floor, minFloor);
+        return floorPriority[index] * now - floorStamp[index];
+    }
+
+    /**
+     * 目的楼层在指定楼层之上的乘客的优先级加权等待时间之和,即Σ优先级*(now-进入时间)
+     *
+     * @param floor 楼层整型形式
+     * @param now   计算等待时间的时刻,单位ms
+     */
+    public long riderCostAbove(int floor, long now) {
+        return cost(stopMask & ((-1L << floor2Index(floor, minFloor)) << 1), now);
+    }
+
+    /**
+     * 目的楼层在指定楼层之下的乘客的优先级加权等待时间之和
+     *
+     * @param floor 楼层整型形式
+     * @param now   计算等待时间的时刻,单位ms
+     */
+    public long riderCostBelow(int floor, long now) {
+        return cost(stopMask & ((1L << floor2Index(floor, minFloor)) - 1), now);
+    }
+
+    private long cost(long mask, long now) {
+        long cost = 0;
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            cost += floorPriority[index] * now - floorStamp[index];
+        }
+        return cost;
+    }
+
+    /**
+     * @return 有乘客要下的最高楼层,若电梯内无人则返回null
+     */
+    public Integer highestStop() {
+        return stopMask == 0 ? null : index2Floor(63 - Long.numberOfLeadingZeros(stopMask), minFloor);
+    }
+
+    /**
+     * @return 有乘客要下的最低楼层,若电梯内无人则返回null
+     */
+    public Integer lowestStop() {
+        return stopMask == 0 ? null : index2Floor(Long.numberOfTrailingZeros(stopMask), minFloor);
+    }
+
+    /**
+     * @return 有乘客要下电梯的楼层数
+     */
+    public int stopCount() {
+        return Long.bitCount(stopMask);
+    }
+
+    public boolean isEmpty() {
+        return stopMask == 0;
+    }
+}
@@ -0,0 +1,298 @@
+import utils.Building;
+import utils.Metrics;
+import utils.TraceChecker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 园区:若干互不相干的分区,每个分区是一栋楼,或一栋楼中服务一部分楼层的一组电梯
+ * 每个分区是一次独立的{@link Simulation},有自己的建筑、调度器、电梯线程、虚拟时钟和运行指标,
+ * 分区之间不共享任何锁和状态,在线程池中并行运行,耗时随核数近似线性下降。
+ * <p>
+ * 园区的电梯按分区顺序统一编号:第一个分区的电梯为1到n1号,第二个分区从n1+1号开始,依此类推。
+ * 请求仍为"[1.5]1-PRI-15-FROM-F1-TO-F3-BY-8"的格式,由路由器按所指定的电梯分给所在分区,
+ * 并改写为分区内的编号;各分区的输出再按时间戳合并、改回园区编号。配置文件为properties格式,例如:
+ * <pre>
+ * zones=A,B
+ * # 各分区的建筑配置文件,相对于园区配置文件所在目录,缺省为评测要求的建筑
+ * zone.A.building=tower-a.properties
+ * # 其余以zone.分区名.开头的配置项只对该分区生效,例如让B区全局分配
+ * zone.B.elevator.dispatch=global
+ * </pre>
+ * 分区的输入仍由评测库解析,因此每个分区至多6部电梯,楼层不超出B4到F7
+ */
+public class Campus {
+    private final List<String> names;
+    private final List<Building> buildings;
+    private final List<Properties> settings;
+    // 各分区第一部电梯的园区编号
+    private final int[] firstElevator;
+    // 园区编号对应的分区下标,下标0不用
+    private final int[] zoneOf;
+
+    /**
+     * @param names     分区名称
+     * @param buildings 各分区的建筑
+     * @param settings  各分区自己的配置项,优先于运行时给出的配置项
+     */
+    public Campus(List<String> names, List<Building> buildings, List<Properties> settings) {
+        if (names.isEmpty() || names.size() != buildings.size()
+                || names.size() != settings.size()) {
+            throw new IllegalArgumentException("Bad zones");
+        }
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.buildings = Collections.unmodifiableList(new ArrayList<>(buildings));
+        this.settings = Collections.unmodifiableList(new ArrayList<>(settings));
+        firstElevator = new int[names.size()];
+        int total = 0;
+        for (int i = 0; i < buildings.size(); i++) {
+            firstElevator[i] = total + 1;
+            total += buildings.get(i).getElevators().size();
+        }
+        zoneOf = new int[total + 1];
+        for (int i = 0; i < buildings.size(); i++) {
+            for (int k = 0; k < buildings.get(i).getElevators().size(); k++) {
+                zoneOf[firstElevator[i] + k] = i;
+            }
+        }
+    }
+
+    /**
+     * 读取园区配置文件,格式见类说明
+     *
+     * @param path 配置文件路径
+     * @return 园区
+     * @throws IOException 读取配置文件或建筑配置文件失败
+     * @throws IllegalArgumentException 如果配置不合法
+     */
+    public static Campus load(Path path) throws IOException {
+        Properties config = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            config.load(in);
+        }
+        Path base = path.toAbsolutePath().getParent();
+        List<String> names = new ArrayList<>();
+        List<Building> buildings = new ArrayList<>();
+        List<Properties> settings = new ArrayList<>();
+        for (String name : config.getProperty("zones", "").split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            String prefix = "zone." + name + ".";
+            Properties buildingConfig = new Properties();
+            String building = config.getProperty(prefix + "building");
+            if (building != null) {
+                try (InputStream in = Files.newInputStream(base.resolve(building.trim()))) {
+                    buildingConfig.load(in);
+                }
+            }
+            Properties zone = new Properties();
+            for (String key : config.stringPropertyNames()) {
+                if (key.startsWith(prefix) && !key.equals(prefix + "building")) {
+                    zone.setProperty(key.substring(prefix.length()), config.getProperty(key));
+                }
+            }
+            names.add(name);
+            buildings.add(Building.parse(buildingConfig));
+            settings.add(zone);
+        }
+        return new Campus(names, buildings, settings);
+    }
+
+    public int getZoneCount() {
+        return names.size();
+    }
+
+    public String getName(int zone) {
+        return names.get(zone);
+    }
+
+    /**
+     * @param zone 分区下标
+     * @return 该分区第一部电梯的园区编号
+     */
+    public int getFirstElevator(int zone) {
+        return firstElevator[zone];
+    }
+
+    /**
+     * @return 园区的电梯总数
+     */
+    public int getElevatorCount() {
+        return zoneOf.length - 1;
+    }
+
+    /**
+     * 把园区的输入按所指定的电梯分给各分区,电梯改写为分区内的编号,其余内容不变
+     *
+     * @param input 带时间戳的园区输入
+     * @return 各分区的输入
+     * @throws IllegalArgumentException 如果某条请求格式不正确或所指定的电梯不存在
+     */
+    public String[] route(String input) {
+        StringBuilder[] parts = new StringBuilder[names.size()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new StringBuilder();
+        }
+        int start = 0;
+        while (start < input.length()) {
+            int end = input.indexOf('\n', start);
+            if (end < 0) {
+                end = input.length();
+            }
+            String line = input.substring(start, end).trim();
+            start = end + 1;
+            if (line.isEmpty()) {
+                continue;
+            }
+            int by = line.lastIndexOf("-BY-");
+            int elevator;
+            try {
+                elevator = by < 0 ? -1 : Integer.parseInt(line.substring(by + 4));
+            } catch (NumberFormatException e) {
+                elevator = -1;
+            }
+            if (elevator <= 0 || elevator >= zoneOf.length) {
+                throw new IllegalArgumentException("Cannot route " + line);
+            }
+            int zone = zoneOf[elevator];
+            parts[zone].append(line, 0, by + 4)
+                    .append(elevator - firstElevator[zone] + 1).append('\n');
+        }
+        String[] result = new String[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = parts[i].toString();
+        }
+        return result;
+    }
+
+    /**
+     * 路由园区的输入,并在线程池中并行运行所有分区
+     *
+     * @param properties 所有分区共用的配置项,未设置的项取系统属性
+     * @param input      带时间戳的园区输入
+     * @param pool       运行分区的线程池
+     * @return 各分区及整个园区的结果,有分区被中断时返回null
+     */
+    public Result run(Properties properties, String input, ForkJoinPool pool) {
+        String[] inputs = route(input);
+        List<Simulation> simulations = new ArrayList<>(inputs.length);
+        List<ForkJoinTask<TraceChecker.Report>> tasks = new ArrayList<>(inputs.length);
+        for (int i = 0; i < inputs.length; i++) {
+            Properties zone = new Properties();
+            zone.putAll(properties);
+            zone.putAll(settings.get(i));
+            Simulation simulation = new Simulation(buildings.get(i), zone, inputs[i]);
+            simulations.add(simulation);
+            tasks.add(pool.submit(simulation::run));
+        }
+        List<TraceChecker.Report> reports = new ArrayList<>(inputs.length);
+        for (ForkJoinTask<TraceChecker.Report> task : tasks) {
+            TraceChecker.Report report = task.join();
+            if (report == null) {
+                return null;
+            }
+            reports.add(report);
+        }
+        return new Result(simulations, reports);
+    }
+
+    /**
+     * 一次园区模拟的结果
+     */
+    public final class Result {
+        private final List<Simulation> simulations;
+        private final List<TraceChecker.Report> reports;
+
+        private Result(List<Simulation> simulations, List<TraceChecker.Report> reports) {
+            this.simulations = simulations;
+            this.reports = reports;
+        }
+
+        /**
+         * @param zone 分区下标
+         * @return 该分区的检查结果与性能指标
+         */
+        public TraceChecker.Report getReport(int zone) {
+            return reports.get(zone);
+        }
+
+        /**
+         * @return 整个园区的检查结果与性能指标,见{@link TraceChecker.Report#merge(List)}
+         */
+        public TraceChecker.Report getReport() {
+            return TraceChecker.Report.merge(reports);
+        }
+
+        /**
+         * 汇总各分区的运行指标:每个分区的指标以"zone.分区名."为前缀保留,
+         * 另把所有电梯的同名指标合并为"campus.elevator.指标名",调度器的指标合并为"campus.scheduler.指标名"
+         *
+         * @return 园区的运行指标
+         */
+        public Metrics getMetrics() {
+            Metrics campus = new Metrics();
+            for (int i = 0; i < simulations.size(); i++) {
+                String prefix = "zone." + names.get(i) + ".";
+                Metrics zone = simulations.get(i).getMetrics();
+                campus.addAll(zone, name -> prefix + name);
+                campus.addAll(zone, name -> "campus." + name.replaceFirst("^elevator\\.\\d+\\.",
+                        "elevator."));
+            }
+            return campus;
+        }
+
+        /**
+         * 按时间戳合并各分区的输出,电梯改回园区编号;时间戳相同的行按分区顺序排列
+         *
+         * @param out 输出目标,由调用方负责缓冲和关闭
+         * @throws IOException 写出失败
+         */
+        public void writeOutput(Writer out) throws IOException {
+            List<String[]> lines = new ArrayList<>(simulations.size());
+            for (Simulation simulation : simulations) {
+                lines.add(simulation.getOutput().split("\\R"));
+            }
+            int[] positions = new int[lines.size()];
+            while (true) {
+                int next = -1;
+                double earliest = Double.MAX_VALUE;
+                for (int i = 0; i < lines.size(); i++) {
+                    String[] zone = lines.get(i);
+                    if (positions[i] < zone.length && !zone[positions[i]].isEmpty()) {
+                        double time = timeOf(zone[positions[i]]);
+                        if (time < earliest) {
+                            earliest = time;
+                            next = i;
+                        }
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                String line = lines.get(next)[positions[next]++];
+                int dash = line.lastIndexOf('-');
+                out.append(line, 0, dash + 1)
+                        .append(String.valueOf(Integer.parseInt(line.substring(dash + 1))
+                                + firstElevator[next] - 1))
+                        .append(System.lineSeparator());
+            }
+            out.flush();
+        }
+
+        private double timeOf(String line) {
+            return Double.parseDouble(line.substring(1, line.indexOf(']')));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.List;
+
+import static utils.FloorConverter.calFloorDistance;
+import static utils.FloorConverter.numFloors;
+
+/**
+ * 全局调度:忽略请求中预先指定的电梯,选择估计代价最小的电梯
+ * 代价 = 新乘客的预计完成时间 * 其优先级 + 新增一次停靠给已分配乘客带来的优先级加权延误
+ * 预计完成时间由电梯位置、运行方向、沿途停靠数以及超出载客量后需要多跑的趟数估计,
+ * 各项时间取自该电梯自己的速度、开关门时间和载客量;不停靠出发或目的楼层的电梯不参与比较
+ */
+public class CostDispatcher implements Dispatcher {
+    @Override
+    public int dispatch(Passenger passenger, List<Elevator> elevators) {
+        int bestId = -1;
+        long bestCost = Long.MAX_VALUE;
+        for (Elevator elevator : elevators) {
+            if (!elevator.serves(passenger)) {
+                continue;
+            }
+            long cost = cost(passenger, elevator);
+            // 代价相同时保留请求原本指定的电梯
+            if (cost < bestCost || (cost == bestCost
+                    && elevator.getId() == passenger.getElevatorId())) {
+                bestCost = cost;
+                bestId = elevator.getId();
+            }
+        }
+        if (bestId < 0) {
+            throw new IllegalArgumentException("No elevator serves passenger "
+                    + passenger.getPersonId());
+        }
+        return bestId;
+    }
+
+    @Override
+    public boolean canReassign() {
+        return true;
+    }
+
+    @Override
+    public boolean shouldReassign(Passenger passenger, Elevator owner, Elevator idle) {
+        // 空闲电梯直接前往,额外留出一次开关门的余量,避免来回改派
+        long idleEta = (long) calFloorDistance(idle.getCurrentFloor(), passenger.getFromFloor())
+                * idle.getMoveTime() + idle.getDoorTime();
+        return idleEta < eta(passenger, owner);
+    }
+
+    private long cost(Passenger passenger, Elevator elevator) {
+        long prioritySum = Scheduler.getInstance().getWaitingLine(elevator.getId()).getPrioritySum();
+        return eta(passenger, elevator) * passenger.getPriority()
+                + elevator.getDoorTime() * prioritySum;
+    }
+
+    /**
+     * 估计电梯接到该乘客所需的时间
+     */
+    private long eta(Passenger passenger, Elevator elevator) {
+        WaitingLine line = Scheduler.getInstance().getWaitingLine(elevator.getId());
+        // 这些统计量均可无锁读取,调度器不会被电梯的任何操作阻塞
+        int waiting = line.backlog();
+        int stops = line.floorCount();
+        Integer highest = line.highestFloor();
+        Integer lowest = line.lowestFloor();
+        int floor = elevator.getCurrentFloor();
+        int target = passenger.getFromFloor();
+        int riding = elevator.getCurrentNum();
+        Direction direction = elevator.getDirection();
+        int travel;
+        if (elevator.isIdle() || direction == Direction.DUNNO
+                || (direction == Direction.UP && target >= floor
+                && passenger.getDirection() == Direction.UP)
+                || (direction == Direction.DOWN && target <= floor
+                && passenger.getDirection() == Direction.DOWN)) {
+            // 顺路
+            travel = calFloorDistance(floor, target);
+        } else if (direction == Direction.UP) {
+            // 先到达最高的请求楼层再折返
+            int top = Math.max(Math.max(floor, target), highest == null ? floor : highest);
+            travel = calFloorDistance(floor, top) + calFloorDistance(top, target);
+        } else {
+            int bottom = Math.min(Math.min(floor, target), lowest == null ? floor : lowest);
+            travel = calFloorDistance(floor, bottom) + calFloorDistance(bottom, target);
+        }
+        int moveTime = elevator.getMoveTime();
+        int capacity = elevator.getCapacity();
+        long eta = (long) travel * moveTime + (long) (stops + riding) * elevator.getDoorTime();
+        // 超出载客量的部分需要电梯多跑一趟
+        int overflow = riding + waiting + 1 - capacity;
+        if (overflow > 0) {
+            eta += (long) overflow * numFloors() * moveTime / capacity;
+        }
+        return eta;
+    }
+}
@@ -0,0 +1,260 @@
+import utils.Building;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static utils.FloorConverter.floor2Index;
+import static utils.FloorConverter.floorLabel;
+import static utils.FloorConverter.index2Floor;
+import static utils.FloorConverter.numFloors;
+
+/**
+ * 按出发楼层和方向估计请求到达率的需求模型
+ * 每个(楼层,方向)只保存一个指数衰减的计数及其最后更新时刻:
+ * 新请求到达时先把计数衰减到当前时刻再加1,查询时同样按流逝的时间衰减,
+ * 计数/时间常数即为近似的到达率。记录和查询都是O(1),内存只与楼层数有关,
+ * 近期的请求权重大,高峰过去后估计值会按时间常数逐渐回落。
+ * 所有方法都持有同一把{@link ReentrantLock},可在多个线程中调用;
+ * 输入线程每个请求都要记录一次,用显式锁而不是监视器,运行在虚拟线程上时不会占住载体线程
+ */
+public class DemandModel {
+    // 衰减的时间常数,单位ms
+    private final double tau;
+    // 各楼层上行、下行请求的衰减计数及其最后更新时刻
+    private final double[] upCount;
+    private final long[] upStamp;
+    private final double[] downCount;
+    private final long[] downStamp;
+    // 所有请求的衰减计数及其最后更新时刻
+    private double totalCount;
+    private long totalStamp;
+    // 所在建筑的最低楼层,楼层下标以它为0
+    private final int minFloor;
+    private final ReentrantLock lock;
+
+    /**
+     * @param tau 衰减的时间常数,单位ms,越大估计越平稳、对变化的反应越慢
+     */
+    public DemandModel(long tau) {
+        this.tau = tau;
+        upCount = new double[numFloors()];
+        upStamp = new long[numFloors()];
+        downCount = new double[numFloors()];
+        downStamp = new long[numFloors()];
+        minFloor = Building.getInstance().getMinFloor();
+        lock = new ReentrantLock();
+    }
+
+    /**
+     * 记录一个新请求
+     *
+     * @param passenger 乘客,以其进入时间为到达时刻
+     * @param index     出发楼层的下标,由调用方算好传入
+     */
+    public void record(Passenger passenger, int index) {
+        long now = passenger.getEnterTime();
+        lock.lock();
+        try {
+            if (passenger.getDirection() == Direction.UP) {
+                upCount[index] = decay(upCount[index], upStamp[index], now) + 1;
+                upStamp[index] = Math.max(upStamp[index], now);
+            } else {
+                downCount[index] = decay(downCount[index], downStamp[index], now) + 1;
+                downStamp[index] = Math.max(downStamp[index], now);
+            }
+            totalCount = decay(totalCount, totalStamp, now) + 1;
+            totalStamp = Math.max(totalStamp, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 估计指定楼层、指定方向的请求到达率
+     *
+     * @param floor     楼层整型形式
+     * @param direction 乘客的运行方向
+     * @param now       时刻,单位ms
+     * @return 到达率,单位 次/s
+     */
+    public double rate(int floor, Direction direction, long now) {
+        int index = floor2Index(floor, minFloor);
+        lock.lock();
+        try {
+            switch (direction) {
+                case UP:
+                    return perSecond(decay(upCount[index], upStamp[index], now));
+                case DOWN:
+                    return perSecond(decay(downCount[index], downStamp[index], now));
+                default:
+                    return perSecond(decay(upCount[index], upStamp[index], now)
+                            + decay(downCount[index], downStamp[index], now));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 估计所有楼层的请求总到达率
+     *
+     * @param now 时刻,单位ms
+     * @return 到达率,单位 次/s
+     */
+    public double totalRate(long now) {
+        lock.lock();
+        try {
+            return perSecond(decay(totalCount, totalStamp, now));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取得模型在指定时刻的快照,用于观察需求分布随时间的变化
+     *
+     * @param now 时刻,单位ms
+     * @return 快照,之后的请求不会改变它
+     */
+    public Snapshot snapshot(long now) {
+        double[] up = new double[upCount.length];
+        double[] down = new double[downCount.length];
+        lock.lock();
+        try {
+            for (int i = 0; i < up.length; i++) {
+                up[i] = perSecond(decay(upCount[i], upStamp[i], now));
+                down[i] = perSecond(decay(downCount[i], downStamp[i], now));
+            }
+            return new Snapshot(now, up, down, perSecond(decay(totalCount, totalStamp, now)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写出全部计数及其更新时刻,用于保存快照
+     *
+     * @param out 输出目标
+     * @throws IOException 写出失败
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        lock.lock();
+        try {
+            for (int i = 0; i < upCount.length; i++) {
+                out.writeDouble(upCount[i]);
+                out.writeLong(upStamp[i]);
+                out.writeDouble(downCount[i]);
+                out.writeLong(downStamp[i]);
+            }
+            out.writeDouble(totalCount);
+            out.writeLong(totalStamp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取{@link #writeTo(DataOutput)}写出的计数,替换当前的全部计数
+     *
+     * @param in 输入,楼层数须与写出时相同
+     * @throws IOException 读取失败
+     */
+    public void readFrom(DataInput in) throws IOException {
+        lock.lock();
+        try {
+            for (int i = 0; i < upCount.length; i++) {
+                upCount[i] = in.readDouble();
+                upStamp[i] = in.readLong();
+                downCount[i] = in.readDouble();
+                downStamp[i] = in.readLong();
+            }
+            totalCount = in.readDouble();
+            totalStamp = in.readLong();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double decay(double count, long stamp, long now) {
+        // 乱序到达的请求可能早于最后更新时刻,此时不再衰减
+        return now <= stamp ? count : count * Math.exp((stamp - now) / tau);
+    }
+
+    private double perSecond(double count) {
+        return count * 1000 / tau;
+    }
+
+    /**
+     * 需求模型的不可变快照
+     */
+    public static final class Snapshot {
+        private final long time;
+        private final double[] up;
+        private final double[] down;
+        private final double total;
+
+        private Snapshot(long time, double[] up, double[] down, double total) {
+            this.time = time;
+            this.up = up;
+            this.down = down;
+            this.total = total;
+        }
+
+        /**
+         * @return 快照的时刻,单位ms
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return 指定楼层、指定方向的到达率,单位 次/s
+         */
+        public double getRate(int floor, Direction direction) {
+            int index = floor2Index(floor);
+            return direction == Direction.UP ? up[index] : down[index];
+        }
+
+        /**
+         * @return 所有楼层的请求总到达率,单位 次/s
+         */
+        public double getTotalRate() {
+            return total;
+        }
+
+        /**
+         * @return 总到达率最高的出发楼层,尚无请求时返回null
+         */
+        public Integer getBusiestFloor() {
+            int best = -1;
+            for (int i = 0; i < up.length; i++) {
+                if (up[i] + down[i] > 0 && (best < 0 || up[i] + down[i] > up[best] + down[best])) {
+                    best = i;
+                }
+            }
+            return best < 0 ? null : index2Floor(best);
+        }
+
+        /**
+         * 形如"demand@12.300s total=0.85/s F1 up=0.60 down=0.00 | F3 up=0.05 down=0.20"的一行,
+         * 只列出有请求的楼层
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(
+                    "demand@%.3fs total=%.2f/s", time / 1000.0, total));
+            String separator = " ";
+            for (int i = 0; i < up.length; i++) {
+                if (up[i] < 0.005 && down[i] < 0.005) {
+                    continue;
+                }
+                builder.append(separator).append(String.format("%s up=%.2f down=%.2f",
+                        floorLabel(index2Floor(i)), up[i], down[i]));
+                separator = " | ";
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * 电梯已有运行方向时,决定下一步继续前进还是掉头的策略
+ * 在电梯持有自己等待队列的监视器时调用
+ */
+public interface DirectionPolicy {
+    /**
+     * 为已有运行方向的电梯选择方向
+     *
+     * @param elevator 电梯,其方向为UP或DOWN
+     * @param cabin    电梯内的乘客
+     * @param line     电梯的等待队列
+     * @return 新的运行方向
+     */
+    Direction choose(Elevator elevator, Cabin cabin, WaitingLine line);
+}
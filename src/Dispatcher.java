@@ -0,0 +1,34 @@
+import java.util.List;
+
+/**
+ * 为乘客请求选择电梯的策略
+ */
+public interface Dispatcher {
+    /**
+     * 为新的乘客请求选择电梯
+     *
+     * @param passenger 新的乘客请求
+     * @param elevators 所有电梯
+     * @return 被选中电梯的ID
+     */
+    int dispatch(Passenger passenger, List<Elevator> elevators);
+
+    /**
+     * @return 是否可能改派乘客;为false时电梯空闲时不必检查其他电梯的等待队列
+     */
+    default boolean canReassign() {
+        return false;
+    }
+
+    /**
+     * 电梯空闲时,判断是否应把另一部电梯尚未上车的乘客改派给它
+     *
+     * @param passenger 尚未上车的乘客
+     * @param owner     乘客当前所属的电梯
+     * @param idle      空闲的电梯
+     * @return true表示改派
+     */
+    default boolean shouldReassign(Passenger passenger, Elevator owner, Elevator idle) {
+        return false;
+    }
+}
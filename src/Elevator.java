@@ -1,71 +1,163 @@
-import com.oocourse.elevator1.PersonRequest;
-import com.oocourse.elevator1.TimableOutput;
-import utils.TimeFixer;
-
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.TreeSet;
+import utils.Building;
+import utils.Building.ElevatorSpec;
+import utils.Clock;
+import utils.DeadlineTimer;
+import utils.EventLog;
+import utils.Histogram;
+import utils.Metrics;
+import utils.SimulationContext;
+import utils.VirtualClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
-import static utils.FloorConverter.floorString2Int;
-import static utils.FloorConverter.floorInt2String;
+import static utils.FloorConverter.calFloorDistance;
+import static utils.FloorConverter.floor2Index;
+import static utils.FloorConverter.floorLabel;
+import static utils.FloorConverter.index2Floor;
+import static utils.FloorConverter.numFloors;
 
 public class Elevator implements Runnable {
-    // 初始位置
-    private static final int initPos = 1;
+    // 停泊空驶层数的基础额度
+    private static final int PARK_ALLOWANCE = 4;
+    // 停泊空驶的层数另外不超过载客移动层数的1/PARK_SHARE
+    private static final int PARK_SHARE = 4;
+    // 电梯状态机的状态
+    enum State {
+        // 没有任务
+        IDLE,
+        // 停在某层、门关着
+        READY,
+        // 门开着
+        DOOR_OPEN
+    }
+
+    // 每一步释放锁之后执行的动作
+    enum Action {
+        PARK,
+        QUANTUM_MOVE,
+        HOLD_DOOR,
+        MOVE,
+        REBALANCE,
+        TERMINATE
+    }
+
+    // 电梯ID
+    private final int id;
+    // 电梯参数,包括停靠楼层
+    private final ElevatorSpec spec;
     // 移动速度
-    private static final int move_time = 400; // unit: ms/层
+    private final int moveTime; // unit: ms/层
     // 限制乘坐人数
-    private static final int max_num = 6;
+    private final int capacity;
     // 开门到关门之间的间隔
-    private static final int min_gap = 400; // unit: ms
-    // 电梯ID
-    private final int id;
+    private final int doorTime; // unit: ms
     // 当前电梯是否空闲
     private final AtomicBoolean idle;
-    // 目标楼层到楼层用户请求的映射
-    private final HashMap<Integer, TreeSet<Passenger>> floor2req;
-    // 当前所在楼层
-    private int currentFloor;
+    // 电梯内的乘客,按目的楼层索引
+    private final Cabin cabin;
+    // 本层等待人数超过空位时选出上电梯的乘客
+    private final BoardingSelector boardingSelector;
+    // 已有运行方向时决定是否掉头的策略
+    private final DirectionPolicy directionPolicy;
+    // 当前所在楼层,调度器会在其他线程读取以估计代价
+    private volatile int currentFloor;
     // 当前乘坐电梯人数
-    private int currentNum;
+    private volatile int currentNum;
     // 当前运行方向
-    private Direction direction;
+    private volatile Direction direction;
     // 是否应该终止线程
     private volatile boolean shouldTerminate = false;
-    // 时间修正工具
-    private final TimeFixer timeFixer;
+    // 本步并入新请求之前读到的终止标志,只由电梯线程访问
+    private boolean stopping;
+    // 运行该电梯的线程,用于空闲时的park/unpark
+    private volatile Thread thread;
+    // 按绝对截止时刻安排移动和开关门
+    private final DeadlineTimer timer;
+    // 状态机当前状态,只由电梯线程访问
+    private State state;
+    // 释放锁之后正在执行的耗时动作,供快照记录;不在执行时为null
+    private volatile Action pending;
+    // 从快照恢复的耗时动作的唤醒事件的登记顺序,没有时为-1
+    private long resumeOrder = -1;
+    // 最后一行输出的时间戳,单位ms
+    private volatile long lastStamp;
+    // 是否正在空闲时驶向停泊楼层,只由电梯线程访问
+    private boolean parking;
+    // 累计移动的层数及其中停泊空驶的层数,只由电梯线程访问
+    private long movedFloors;
+    private long parkedFloors;
+    // 持锁期间产生的输出,释放锁后再统一打印,避免在锁内进行IO
+    private final ArrayList<String> outputs;
+    // 是否记录二进制事件日志,以及与outputs一一对应的打包事件
+    private final boolean logEvents;
+    private long[] events;
+    // 所在建筑的最低楼层,事件日志中的楼层下标以它为0
+    private final int minFloor;
+    // 按楼层下标排列的楼层字符串,输出时直接查表
+    private final String[] labels;
+    // 运行指标:每一步开始时的等待队列长度、乘客等待时间、乘坐时间(ms)、
+    // 获取等待队列监视器的等待时间(ns)、耗时操作醒来时晚于截止时刻的时长(us)
+    private final Histogram queueDepth;
+    private final Histogram waitTime;
+    private final Histogram rideTime;
+    private final Histogram monitorWait;
+    private final Histogram wakeLate;
+    // 运行指标:因输出晚于截止时刻而顺延的累计时长(ns)
+    private final LongAdder drift;
+    // 运行指标:开门次数、移动层数、空载移动层数
+    private final LongAdder doorCycles;
+    private final LongAdder moves;
+    private final LongAdder emptyMoves;
 
-    public Elevator(int id) {
-        this.id = id;
+    public Elevator(ElevatorSpec spec, DirectionPolicy directionPolicy) {
+        this.id = spec.getId();
+        this.spec = spec;
+        this.moveTime = spec.getMoveTime();
+        this.capacity = spec.getCapacity();
+        this.doorTime = spec.getDoorTime();
         idle = new AtomicBoolean(true);
-        floor2req = new HashMap<>();
-        for (int i = -4; i <= 7; i++) {
-            if (i == 0) {
-                continue;
-            }
-            floor2req.put(i, new TreeSet<>(Comparator.comparingInt(
-                    (Passenger p) -> p.getRequest().getPriority())
-                    .reversed().thenComparingLong(Passenger::getEnterTime)));
-        }
-        currentFloor = initPos;
+        cabin = new Cabin(capacity);
+        boardingSelector = new BoardingSelector(capacity);
+        this.directionPolicy = directionPolicy;
+        currentFloor = spec.getInitFloor();
         direction = Direction.DUNNO;
-        timeFixer = new TimeFixer();
+        timer = new DeadlineTimer();
+        state = State.IDLE;
+        outputs = new ArrayList<>();
+        logEvents = Clock.getInstance().getEventLog() != null;
+        events = new long[8];
+        minFloor = Building.getInstance().getMinFloor();
+        labels = Building.getInstance().getLabels();
+        Metrics metrics = Metrics.getInstance();
+        String prefix = "elevator." + id + ".";
+        queueDepth = metrics.histogram(prefix + "queueDepth");
+        waitTime = metrics.histogram(prefix + "waitMs");
+        rideTime = metrics.histogram(prefix + "rideMs");
+        monitorWait = metrics.histogram(prefix + "monitorWaitNs");
+        wakeLate = metrics.histogram(prefix + "wakeLateUs");
+        drift = metrics.counter(prefix + "driftNs");
+        doorCycles = metrics.counter(prefix + "doorCycles");
+        moves = metrics.counter(prefix + "moves");
+        emptyMoves = metrics.counter(prefix + "emptyMoves");
     }
 
     /**
      * 模拟有人进入电梯
      *
      * @param passenger 乘客
-     * @param floor
      */
-    public void passengerIn(Passenger passenger, int floor) {
+    public void passengerIn(Passenger passenger) {
         currentNum += 1;
-        PersonRequest request = passenger.getRequest();
-        TimableOutput.println("IN-" + request.getPersonId() + 
-                "-" + request.getFromFloor() + "-" + this.id);
-        floor2req.get(floor).add(passenger);
+        emit("IN-" + passenger.getPersonId() +
+                "-" + label(passenger.getFromFloor()) + "-" + this.id,
+                EventLog.IN, passenger.getFromFloor(), passenger.getPersonId());
+        long now = Clock.getInstance().currentTimeMillis();
+        waitTime.record(now - passenger.getEnterTime());
+        cabin.add(passenger, now);
     }
 
     /**
@@ -74,113 +166,367 @@ public class Elevator implements Runnable {
      * @param shouldTerminate
      */
     public void setShouldTerminate(boolean shouldTerminate) {
-        if (idle.get()) {
-            synchronized (Scheduler.getInstance().getWaitingLine(id)) {
-                Scheduler.getInstance().getWaitingLine(id).notify();
-            }
-        }
+        // 先写标志再唤醒,否则电梯可能在标志生效前醒来并重新进入等待
         this.shouldTerminate = shouldTerminate;
+        wakeUp();
+    }
+
+    /**
+     * 唤醒空闲等待中的电梯线程;若电梯并未等待,则它下一次进入等待时会立即返回
+     */
+    public void wakeUp() {
+        Clock.getInstance().unpark(thread);
     }
 
     /**
      * 电梯进程被唤醒后立即进行的相关操作
-     * 1. 启动时间修正器
-     * 2. 修改空闲标志
-     * 3. 确定运动方向
-     * 4. 决定是否进行量子移动
+     * 1. 修改空闲标志
+     * 2. 确定运动方向
+     * 3. 决定是否进行量子移动
+     *
+     * @return 是否需要进行量子移动,移动本身在释放等待队列的锁之后完成
      */
-    public void elevatorAwake() {
+    public boolean elevatorAwake() {
         idle.set(false);
         // 遍历当前存在的请求
         // 1. 如果存在同楼层的请求,则放弃量子移动,方向设置为DUNNO
         // 2. 如果只有其他楼层的请求,我们根据距离和优先级判断最优的楼层选择,设置方向为前往对应楼层的方向
-        int bestFloor = -10;
-        int bestPriority = 0;
-        if (Scheduler.getInstance().getWaitingLine(id).isEmpty()) {
+        WaitingLine line = Scheduler.getInstance().getWaitingLine(id);
+        if (line.isEmpty()) {
             // 如果等待列表为空,说明电梯线程这次被终止信号唤醒
             // 不要为它选择方向
-            return;
+            return false;
         }
-        for (Passenger passenger : Scheduler.getInstance().getWaitingLine(id)) {
-            PersonRequest request = passenger.getRequest();
-            int floor = floorString2Int(request.getFromFloor());
-            if (floor == currentFloor) {
-                direction = Direction.DUNNO;
-                return;
-            }
-            int priority = request.getPriority();
-            if (priority > bestPriority) {
-                bestFloor = floor;
-                bestPriority = priority;
-            }
-        }
-        long gap = timeFixer.archive();
-        if (gap < min_gap) {
-            try {
-                Thread.sleep(min_gap - gap);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        if (line.hasWaitingAt(currentFloor)) {
+            direction = Direction.DUNNO;
+            return false;
         }
+        int bestFloor = line.peekBest().getFromFloor();
         if (bestFloor > currentFloor) {
             direction = Direction.UP;
-            moveTo();
         } else if (bestFloor < currentFloor) {
             direction = Direction.DOWN;
-            moveTo();
         } else {
             throw new IllegalArgumentException("Wrong move");
         }
+        return true;
     }
 
     @Override
     public void run() {
-        // 判断电梯是否还有需要去往的楼层
+        thread = Thread.currentThread();
+        WaitingLine line = Scheduler.getInstance().getWaitingLine(id);
+        // 从快照恢复时先完成快照时刻正在执行的动作
+        finishPending();
+        // 每一步分为两段:持锁并入新请求、做出决策、让乘客进出,
+        // 然后释放锁,再执行需要消耗模拟时间的动作(移动、保持开门、空闲等待)
         while (true) {
-            synchronized (Scheduler.getInstance().getWaitingLine(id)) {
-                if ((Scheduler.getInstance().getWaitingLine(id).isEmpty() 
-                        && currentNum == 0) && !shouldTerminate) {
-                    // 这个电梯,不需要了
+            Action action;
+            long request = System.nanoTime();
+            synchronized (line) {
+                long acquired = System.nanoTime();
+                // 先读终止标志再并入收件箱:输入线程投递完所有请求后才设置标志,
+                // 读到标志时它们都已在收件箱中,本次drain会把它们全部并入
+                stopping = shouldTerminate;
+                line.drain();
+                queueDepth.record(line.size());
+                action = step(line);
+                line.getLockStats().record(acquired - request, System.nanoTime() - acquired);
+                monitorWait.record(acquired - request);
+            }
+            flushOutputs();
+            pending = action;
+            switch (action) {
+                case PARK:
+                    // 这个电梯,不需要了,等待用户的请求输入
                     try {
-                        // 等待用户的请求输入
-                        Scheduler.getInstance().getWaitingLine(id).wait();
-                        timeFixer.init();
-                        elevatorAwake();
+                        Clock.getInstance().park();
                     } catch (InterruptedException e) {
                         e.printStackTrace();
                     }
-                }
-
-                if (Scheduler.getInstance().getWaitingLine(id).isEmpty() 
-                        && currentNum == 0 && shouldTerminate) {
+                    break;
+                case QUANTUM_MOVE:
+                    // 被唤醒后立即向请求楼层移动一层,耗时与普通移动相同
+                    simulate(moveTime);
+                    moveTo();
+                    break;
+                case HOLD_DOOR:
+                    // 门保持开着doorTime,期间到达的乘客在关门前仍可进入
+                    simulate(doorTime);
+                    break;
+                case MOVE:
+                    // 模拟电梯运动所消耗的时间
+                    simulate(moveTime);
+                    moveTo();
+                    break;
+                case REBALANCE:
+                    // 释放自己的锁之后再尝试接手其他电梯尚未上车的乘客,避免两把锁嵌套
+                    Scheduler.getInstance().rebalance(this);
+                    break;
+                case TERMINATE:
+                    if (SimulationContext.current().getProperty("elevator.lockStats") != null) {
+                        System.err.println("lock-" + id + " " + line.getLockStats());
+                    }
                     return;
+                default:
+                    throw new IllegalStateException("No such action");
+            }
+            pending = null;
+        }
+    }
+
+    /**
+     * 完成从快照恢复的耗时动作:休眠到原来的截止时刻,移动的话再到达下一层;空闲等待则继续等待
+     */
+    private void finishPending() {
+        if (pending == null) {
+            return;
+        }
+        switch (pending) {
+            case PARK:
+                try {
+                    Clock.getInstance().park();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
                 }
-                // 选择电梯方向
-                chooseDir();
+                break;
+            case HOLD_DOOR:
+                resumeSleep();
+                break;
+            case QUANTUM_MOVE:
+            case MOVE:
+                resumeSleep();
+                moveTo();
+                break;
+            default:
+                break;
+        }
+        pending = null;
+    }
+
+    /**
+     * 按原来的登记顺序休眠到快照中的截止时刻
+     * 截止时刻恰为快照时刻时也要登记唤醒事件,否则各电梯会同时继续运行,事件顺序不再确定
+     */
+    private void resumeSleep() {
+        Clock clock = Clock.getInstance();
+        if (resumeOrder < 0) {
+            simulate(0);
+            return;
+        }
+        clock.setNextOrder(resumeOrder);
+        try {
+            clock.sleep(Math.max(timer.getDeadline() - clock.nanoTime() + 999_999, 0) / 1_000_000);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
 
-                // 根据上下乘客情况选择开关门
-                openAndCloseDoor();
+    /**
+     * 记录电梯及其等待队列的状态,须在所有受管理的线程都停下来时调用
+     *
+     * @param line  本电梯的等待队列
+     * @param clock 当前模拟的虚拟时钟
+     * @return 电梯状态
+     */
+    Snapshot.ElevatorState capture(WaitingLine line, VirtualClock clock) {
+        List<Passenger> riders = new ArrayList<>(currentNum);
+        long[] boardTimes = new long[currentNum];
+        for (int index = 0; index < numFloors(); index++) {
+            int floor = index2Floor(index);
+            for (int i = 0; i < cabin.countAt(floor); i++) {
+                boardTimes[riders.size()] = cabin.boardTimeAt(floor, i);
+                riders.add(cabin.riderAt(floor, i));
+            }
+        }
+        List<Passenger> waiting = new ArrayList<>();
+        List<Passenger> inbox = new ArrayList<>();
+        synchronized (line) {
+            line.copyTo(waiting, inbox);
+        }
+        return new Snapshot.ElevatorState(state, pending, timer.getDeadline(),
+                thread == null ? -1 : clock.getWakeOrder(thread), lastStamp,
+                currentFloor, direction, idle.get(), parking, shouldTerminate,
+                movedFloors, parkedFloors, riders, boardTimes, waiting, inbox);
+    }
 
-                if (Scheduler.getInstance().getWaitingLine(id).isEmpty() 
-                        && currentNum == 0) {
-                    // 这个电梯,不需要了
-                    if (shouldTerminate) {
-                        return;
-                    }
-                    idle.set(true);
-                    continue;
+    /**
+     * 把电梯及其等待队列恢复为快照中的状态,须在启动电梯线程之前调用
+     *
+     * @param saved 快照中的电梯状态
+     * @param line  本电梯的空等待队列
+     */
+    void restore(Snapshot.ElevatorState saved, WaitingLine line) {
+        state = saved.state;
+        pending = saved.pending;
+        timer.restore(saved.deadline);
+        resumeOrder = saved.order;
+        lastStamp = saved.lastStamp;
+        currentFloor = saved.floor;
+        direction = saved.direction;
+        idle.set(saved.idle);
+        parking = saved.parking;
+        shouldTerminate = saved.terminating;
+        movedFloors = saved.movedFloors;
+        parkedFloors = saved.parkedFloors;
+        for (int i = 0; i < saved.riders.size(); i++) {
+            cabin.add(saved.riders.get(i), saved.boardTimes[i]);
+        }
+        currentNum = saved.riders.size();
+        synchronized (line) {
+            for (Passenger passenger : saved.waiting) {
+                line.add(passenger);
+            }
+        }
+        for (Passenger passenger : saved.inbox) {
+            line.offer(passenger);
+        }
+    }
+
+    /**
+     * 在持有等待队列锁的情况下推进状态机,不进行任何休眠
+     *
+     * @param line 本电梯的等待队列
+     * @return 释放锁之后要执行的动作
+     */
+    private Action step(WaitingLine line) {
+        switch (state) {
+            case IDLE:
+                if (line.isEmpty() && currentNum == 0) {
+                    return canTerminate(line) ? Action.TERMINATE : park();
                 }
+                // 被新请求唤醒,或者空闲时接手了其他电梯的乘客
+                parking = false;
+                timer.reset();
+                state = State.READY;
+                if (elevatorAwake()) {
+                    return Action.QUANTUM_MOVE;
+                }
+                return ready(line);
+            case READY:
+                return ready(line);
+            case DOOR_OPEN:
+                closeDoor();
+                state = State.READY;
+                return afterDoor(line);
+            default:
+                throw new IllegalStateException("No such state");
+        }
+    }
+
+    /**
+     * 空闲时决定是停在原地等待,还是向调度器预测的需求楼层移动一层
+     * 目标至少相距两层才出发,出发后一直走到目标,避免目标在相邻楼层间摇摆时来回移动;
+     * 停泊空驶的层数不超过基础额度加上载客移动层数的1/PARK_SHARE,以免为等待请求耗电过多。
+     * 移动一层后会重新回到空闲状态判断,途中到达的请求可以立即接手
+     */
+    private Action park() {
+        Integer target = Scheduler.getInstance().parkingFloor(this);
+        if (target == null || target == currentFloor
+                || (!parking && calFloorDistance(currentFloor, target) < 2)
+                || PARK_SHARE * (parkedFloors - PARK_ALLOWANCE) >= movedFloors - parkedFloors) {
+            parking = false;
+            return Action.PARK;
+        }
+        if (!parking) {
+            // 刚结束空闲等待,从此刻起计时;停泊途中则接着上一层的截止时刻
+            timer.reset();
+        }
+        parking = true;
+        parkedFloors++;
+        direction = target > currentFloor ? Direction.UP : Direction.DOWN;
+        return Action.MOVE;
+    }
 
+    /**
+     * 电梯停在某层、门关着时:选择方向并决定是否开门
+     */
+    private Action ready(WaitingLine line) {
+        if (canTerminate(line)) {
+            return Action.TERMINATE;
+        }
+        // 选择电梯方向
+        chooseDir();
+        // 根据上下乘客情况选择开门
+        if (openDoor()) {
+            state = State.DOOR_OPEN;
+            return Action.HOLD_DOOR;
+        }
+        return afterDoor(line);
+    }
+
+    /**
+     * 输入已结束、桶和收件箱中都没有乘客且电梯内无人时才可以终止;
+     * 收件箱中还有乘客时转入空闲,下一步并入后继续接送
+     */
+    private boolean canTerminate(WaitingLine line) {
+        return stopping && line.isEmpty() && !line.hasPending() && currentNum == 0;
+    }
+
+    /**
+     * 门已关上:没有任务则转入空闲,否则继续移动
+     */
+    private Action afterDoor(WaitingLine line) {
+        if (line.isEmpty() && currentNum == 0) {
+            // 这个电梯,不需要了
+            if (canTerminate(line)) {
+                return Action.TERMINATE;
             }
-            // 模拟电梯运动所消耗的时间
-            try {
-                long gap = timeFixer.archive();
-                Thread.sleep(this.move_time - gap);
-                timeFixer.init();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            idle.set(true);
+            state = State.IDLE;
+            return Action.REBALANCE;
+        }
+        return Action.MOVE;
+    }
+
+    /**
+     * 记录一行输出,在释放锁后由{@link #flushOutputs()}打印
+     *
+     * @param message   输出内容
+     * @param type      事件类型,见{@link EventLog#ARRIVE}等常量
+     * @param floor     事件所在楼层
+     * @param passenger 乘客ID,与乘客无关时为-1
+     */
+    private void emit(String message, int type, int floor, int passenger) {
+        if (logEvents) {
+            if (outputs.size() == events.length) {
+                events = Arrays.copyOf(events, events.length * 2);
             }
-            moveTo();
+            events[outputs.size()] = EventLog.event(type, id,
+                    floor2Index(floor, minFloor), passenger);
+        }
+        outputs.add(message);
+    }
+
+    /**
+     * 打印持锁期间产生的输出
+     * 开关门的间隔以实际打印出的时间戳为准,因此把最后一行的时间戳登记给计时器
+     */
+    private void flushOutputs() {
+        if (outputs.isEmpty()) {
+            return;
+        }
+        long stamp = 0;
+        for (int i = 0; i < outputs.size(); i++) {
+            stamp = logEvents ? Clock.getInstance().println(outputs.get(i), events[i])
+                    : Clock.getInstance().println(outputs.get(i));
+        }
+        outputs.clear();
+        lastStamp = stamp;
+        drift.add(timer.mark(stamp));
+    }
+
+    /**
+     * 模拟一段耗时操作,在上一个截止时刻加上标准耗时的时刻结束
+     * 持锁决策和输出所花的时间已包含在内,不会使操作变长
+     *
+     * @param duration 操作的标准耗时,单位ms
+     */
+    private void simulate(long duration) {
+        try {
+            wakeLate.record(timer.await(duration) / 1000);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
     }
 
@@ -188,41 +534,15 @@ public class Elevator implements Runnable {
      * 在电梯被唤醒后确定首次移动的方向
      */
     public void dunnoFindPriority() {
-        int status = 0;
+        // 优先查看当前楼层外等待的用户,按其目的楼层定方向;
+        // 否则前往优先级最高的用户所在楼层
+        WaitingLine line = Scheduler.getInstance().getWaitingLine(id);
         int bestFloor = 99;
-        int bestFloorPriority = 0;
-        long bestFloorEnterTime = 999999999L;
-        // 优先查看当前楼层外等待的用户
-        for (Passenger passenger : Scheduler.getInstance().getWaitingLine(id)) {
-            PersonRequest request = passenger.getRequest();
-            long enterTime = passenger.getEnterTime();
-            int floor = floorString2Int(request.getFromFloor());
-            if (floor == currentFloor) {
-                status = 2;
-                int toFloor = floorString2Int(request.getToFloor());
-                int priority = request.getPriority();
-                if (priority > bestFloorPriority || (priority == bestFloorPriority 
-                        && enterTime < bestFloorEnterTime)) {
-                    bestFloor = toFloor;
-                    bestFloorPriority = priority;
-                    bestFloorEnterTime = enterTime;
-                }
-            } else {
-                // 楼上或者楼下发来的请求
-                if (status == 2) {
-                    continue;
-                }
-                status = 1;
-                int fromFloor = floorString2Int(request.getFromFloor());
-                int priority = request.getPriority();
-                if (priority > bestFloorPriority || 
-                        (priority == bestFloorPriority && enterTime < bestFloorEnterTime)) {
-                    bestFloor = fromFloor;
-                    bestFloorPriority = priority;
-                    bestFloorEnterTime = enterTime;
-                }
-            }
-
+        Passenger best = line.peekBestAt(currentFloor);
+        if (best != null) {
+            bestFloor = best.getToFloor();
+        } else if (!line.isEmpty()) {
+            bestFloor = line.peekBest().getFromFloor();
         }
         if (bestFloor > currentFloor) {
             direction = Direction.UP;
@@ -233,70 +553,14 @@ public class Elevator implements Runnable {
     }
 
     /**
-     * 基于LOOK策略,不关注乘客的优先级,进行电梯的方向选择
+     * 选择电梯方向:尚无方向时按优先级确定首次移动的方向,否则交给方向策略决定是否掉头
      */
     public void chooseDir() {
-        switch (this.direction) {
-            case DUNNO:
-                dunnoFindPriority();
-                break;
-            case UP:
-                for (Integer floor : floor2req.keySet()) {
-                    if (!floor2req.get(floor).isEmpty()) {
-                        if (floor > currentFloor) {
-                            // 电梯方向保持不变
-                            return;
-                        }
-                    }
-                }
-                // 如果当前电梯未满载,可以判断电梯外等待中的乘客请求
-                if (!this.full()) {
-                    for (Passenger passenger : Scheduler.getInstance().getWaitingLine(id)) {
-                        int fromFloor = floorString2Int(passenger.getRequest().getFromFloor());
-                        if (fromFloor > currentFloor) {
-                            // 电梯方向保持不变
-                            return;
-                        } else if (fromFloor == currentFloor) {
-                            int toFloor = floorString2Int(passenger.getRequest().getToFloor());
-                            if (toFloor > currentFloor) {
-                                // 电梯方向保持不变
-                                return;
-                            }
-                        }
-                    }
-                }
-                direction = Direction.DOWN;
-                break;
-            case DOWN:
-                for (Integer floor : floor2req.keySet()) {
-                    if (!floor2req.get(floor).isEmpty()) {
-                        if (floor < currentFloor) {
-                            // 电梯方向保持不变
-                            return;
-                        }
-                    }
-                }
-                // 如果当前电梯未满载,可以判断电梯外等待中的乘客请求
-                if (!this.full()) {
-                    for (Passenger passenger : Scheduler.getInstance().getWaitingLine(id)) {
-                        int fromFloor = floorString2Int(passenger.getRequest().getFromFloor());
-                        if (fromFloor < currentFloor) {
-                            // 电梯方向保持不变
-                            return;
-                        } else if (fromFloor == currentFloor) {
-                            int toFloor = floorString2Int(passenger.getRequest().getToFloor());
-                            if (toFloor < currentFloor) {
-                                // 电梯方向保持不变
-                                return;
-                            }
-                        }
-                    }
-                }
-                direction = Direction.UP;
-                break;
-            default:
-                throw new IllegalArgumentException("No such direction");
-
+        if (direction == Direction.DUNNO) {
+            dunnoFindPriority();
+        } else {
+            direction = directionPolicy.choose(this, cabin,
+                    Scheduler.getInstance().getWaitingLine(id));
         }
     }
 
@@ -307,72 +571,93 @@ public class Elevator implements Runnable {
      */
     private void passengerOut(Passenger passenger) {
         currentNum--;
-        PersonRequest request = passenger.getRequest();
-        TimableOutput.println("OUT-" + request.getPersonId() + 
-                "-" + request.getToFloor() + "-" + this.id);
+        emit("OUT-" + passenger.getPersonId() +
+                "-" + label(passenger.getToFloor()) + "-" + this.id,
+                EventLog.OUT, passenger.getToFloor(), passenger.getPersonId());
     }
 
     /**
-     * 模拟电梯的开关门
+     * 根据上下乘客情况决定是否开门,开门后先让到达目的地的乘客离开
+     *
+     * @return 是否开了门
      */
-    private void openAndCloseDoor() {
-        boolean leaveElevator = !floor2req.get(currentFloor).isEmpty();
+    private boolean openDoor() {
+        boolean leaveElevator = cabin.hasStopAt(currentFloor);
         boolean enterElevator = Scheduler.getInstance().canEnter(this, currentFloor, leaveElevator);
-
-        if (enterElevator || leaveElevator) {
-            TimableOutput.println("OPEN-" + floorInt2String(currentFloor) + "-" + this.id);
-            timeFixer.init();
+        if (!enterElevator && !leaveElevator) {
+            return false;
         }
+        emit("OPEN-" + label(currentFloor) + "-" + this.id, EventLog.OPEN, currentFloor, -1);
+        doorCycles.increment();
         if (leaveElevator) {
             // 有人需要离开
-            TreeSet<Passenger> list = floor2req.get(currentFloor);
-            for (Passenger passenger : list) {
-                passengerOut(passenger);
+            long now = Clock.getInstance().currentTimeMillis();
+            int count = cabin.countAt(currentFloor);
+            for (int i = 0; i < count; i++) {
+                passengerOut(cabin.riderAt(currentFloor, i));
+                rideTime.record(now - cabin.boardTimeAt(currentFloor, i));
             }
-            list.clear();
+            cabin.clear(currentFloor);
         }
+        return true;
+    }
 
-        // 如果有人要上下电梯,就得依次完成门保持开着400ms和接收乘客的操作
-        if (enterElevator || leaveElevator) {
-            try {
-                long gap = timeFixer.archive();
-                Thread.sleep(min_gap - gap);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            // 为什么这里不可以只在enterElevator为真的时候调用passengerIn()方法?
-            // enterElevator是开门时检测有无乘客进入的结果,
-            // 如果这开关门400ms间隔内有新加入的乘客,我们也要让他能进就进
-            // 因此只要电梯门开了,我们都要调用该方法,让乘客进来
-            // 乘客进入电梯
-            passengersIn();
-        }
-        if (enterElevator || leaveElevator) {
-            TimableOutput.println("CLOSE-" + floorInt2String(currentFloor) + "-" + this.id);
-            timeFixer.init();
-        }
+    /**
+     * 门已保持开启足够时长,接收乘客后关门
+     */
+    private void closeDoor() {
+        // 为什么这里不可以只在enterElevator为真的时候调用passengersIn()方法?
+        // enterElevator是开门时检测有无乘客进入的结果,
+        // 如果这开关门400ms间隔内有新加入的乘客,我们也要让他能进就进
+        // 因此只要电梯门开了,我们都要调用该方法,让乘客进来
+        // 开门期间乘客已经下完,队列也可能被改派或有新乘客加入,
+        // 关门前按此刻的情况重新选择方向,要掉头就在这次开门时接上反向的乘客,关门后也按新方向移动
+        chooseDir();
+        // 乘客进入电梯
+        passengersIn();
+        emit("CLOSE-" + label(currentFloor) + "-" + this.id, EventLog.CLOSE, currentFloor, -1);
     }
 
     /**
      * 电梯到达调度器指定的楼层
      */
     private void passengersIn() {
-        // 不管你上行还是下行,能接就接
-        TreeSet<Passenger> line = Scheduler.getInstance().getWaitingLine(id);
-        Iterator<Passenger> iterator = line.iterator();
-        while (iterator.hasNext()) {
-            Passenger passenger = iterator.next();
-            int toFloor = floorString2Int(passenger.getRequest().getToFloor());
-            int fromFloor = floorString2Int(passenger.getRequest().getFromFloor());
-            if (!this.full() && fromFloor == currentFloor
-                    && ((direction == Direction.UP && toFloor > fromFloor)
-                    || (direction == Direction.DOWN && toFloor < fromFloor))) {
-                this.passengerIn(passenger, toFloor);
-                iterator.remove();
-            }
+        // 通常只从当前楼层、与电梯同方向的桶中取出乘客;
+        // 可以顺带接上反向乘客时,两个方向的乘客一起参与选择
+        WaitingLine line = Scheduler.getInstance().getWaitingLine(id);
+        int count = boardingSelector.select(line, this, cabin, boardsBothWays(line));
+        for (int i = 0; i < count; i++) {
+            this.passengerIn(boardingSelector.selectedAt(i));
         }
     }
 
+    /**
+     * 判断本层反向等待的乘客是否也可以在这次开门时上电梯
+     * 前方既无人等待、轿厢内也无人要在前方下电梯时,电梯会在本层掉头,
+     * 此时接上反向的乘客不会让他们先随电梯多走一段,还能省去回程在本层的一次开关门
+     *
+     * @param line 本电梯的等待队列
+     * @return true表示两个方向的乘客都可以上电梯
+     */
+    public boolean boardsBothWays(WaitingLine line) {
+        switch (direction) {
+            case UP:
+                return !line.hasWaitingAbove(currentFloor) && !cabin.hasStopAbove(currentFloor);
+            case DOWN:
+                return !line.hasWaitingBelow(currentFloor) && !cabin.hasStopBelow(currentFloor);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param floor 楼层整型形式
+     * @return 楼层字符串,查构造时缓存的楼层表
+     */
+    private String label(int floor) {
+        return floorLabel(floor, minFloor, labels);
+    }
+
     /**
      * 根据this.direction,实现电梯移动
      */
@@ -393,8 +678,16 @@ public class Elevator implements Runnable {
             default:
                 throw new IllegalArgumentException("No such direction");
         }
-        TimableOutput.println("ARRIVE-" + floorInt2String(currentFloor) + "-" + id);
-        timeFixer.init();
+        movedFloors++;
+        moves.increment();
+        if (currentNum == 0) {
+            emptyMoves.increment();
+        }
+        String message = "ARRIVE-" + label(currentFloor) + "-" + id;
+        lastStamp = logEvents ? Clock.getInstance().println(message, EventLog.event(
+                EventLog.ARRIVE, id, floor2Index(currentFloor, minFloor), -1))
+                : Clock.getInstance().println(message);
+        drift.add(timer.mark(lastStamp));
     }
 
     /**
@@ -406,12 +699,65 @@ public class Elevator implements Runnable {
         return id;
     }
 
+    public int getCurrentFloor() {
+        return currentFloor;
+    }
+
+    public int getCurrentNum() {
+        return currentNum;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public boolean isIdle() {
+        return idle.get();
+    }
+
+    public int getMoveTime() {
+        return moveTime;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getDoorTime() {
+        return doorTime;
+    }
+
+    /**
+     * 判断电梯能否接送该乘客,即出发楼层和目的楼层都在其停靠范围内
+     *
+     * @param passenger 乘客
+     * @return true表示可以接送
+     */
+    public boolean serves(Passenger passenger) {
+        return spec.stopsAt(passenger.getFromFloor()) && spec.stopsAt(passenger.getToFloor());
+    }
+
+    /**
+     * @return 第i位为1表示电梯停靠下标为i的楼层
+     */
+    public long getStopMask() {
+        return spec.getStopMask();
+    }
+
+    /**
+     * @param floor 楼层整型形式
+     * @return 电梯是否停靠该楼层
+     */
+    public boolean stopsAt(int floor) {
+        return spec.stopsAt(floor);
+    }
+
     /**
      * 检查电梯是否已满载
      *
      * @return true表示电梯已满(达到最大承载人数)，false表示还有空位
      */
     public boolean full() {
-        return this.currentNum == max_num;
+        return this.currentNum >= capacity;
     }
 }
@@ -0,0 +1,23 @@
+import java.util.List;
+
+/**
+ * 按请求中指定的电梯ID分配,与评测要求一致,是默认的调度方式
+ * 若指定的电梯不停靠乘客的出发或目的楼层,则改由ID最小的、能够接送的电梯负责
+ */
+public class FixedDispatcher implements Dispatcher {
+    @Override
+    public int dispatch(Passenger passenger, List<Elevator> elevators) {
+        int elevatorId = passenger.getElevatorId();
+        if (elevatorId >= 1 && elevatorId <= elevators.size()
+                && elevators.get(elevatorId - 1).serves(passenger)) {
+            return elevatorId;
+        }
+        for (Elevator elevator : elevators) {
+            if (elevator.serves(passenger)) {
+                return elevator.getId();
+            }
+        }
+        throw new IllegalArgumentException("No elevator serves passenger "
+                + passenger.getPersonId());
+    }
+}
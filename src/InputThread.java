@@ -1,23 +1,30 @@
 import com.oocourse.elevator1.ElevatorInput;
 import com.oocourse.elevator1.PersonRequest;
 import com.oocourse.elevator1.Request;
+import utils.Clock;
+import utils.SimulationContext;
 
 public class InputThread implements Runnable {
-    private static InputThread instance;
+    // 运行输入任务的线程,尚未运行时为null
+    private volatile Thread thread;
 
     private InputThread() {}
 
+    /**
+     * @return 当前模拟的输入线程任务
+     */
     public static InputThread getInstance() {
-        if (instance == null) {
-            instance = new InputThread();
-        }
-        return instance;
+        return SimulationContext.current().component(InputThread.class, InputThread::new);
+    }
+
+    Thread getThread() {
+        return thread;
     }
 
     /**
      * 实现电梯系统的主要输入处理循环。
      * <p>
-     * 此方法作为输入线程的入口点。它使用一个 {@link ElevatorInput} 持续从标准输入 (System.in) 读取 {@link Request} 对象。
+     * 此方法作为输入线程的入口点。它使用一个 {@link ElevatorInput} 持续从经 {@link Clock#wrapInput} 包装的当前模拟的输入(默认为标准输入 System.in)读取 {@link Request} 对象。
      * 有效的 {@link PersonRequest} 对象会被提取出来，
      * 并通过 {@link Scheduler#newRequest(Passenger)} 分发给核心 {@link Scheduler}。
      * </p>
@@ -26,7 +33,7 @@ public class InputThread implements Runnable {
      * 循环终止后，该方法执行清理和关闭步骤：
      * <ol>
      *     <li>关闭 {@code ElevatorInput}。关闭期间的异常会被捕获并打印其堆栈跟踪。</li>
-     *     <li>使用 {@link Thread#sleep(long)} 短暂暂停（100毫秒）。这可能有助于让待处理的操作或输出完成。
+     *     <li>使用 {@link Clock#sleep(long)} 短暂暂停（10毫秒）。这可能有助于让待处理的操作或输出完成。
      *         休眠期间的异常会被捕获并打印其堆栈跟踪。</li>
      *     <li>通过 {@link Scheduler#stopAllElevators()} 指示 {@link Scheduler} 停止所有电梯操作。</li>
      * </ol>
@@ -42,12 +49,22 @@ public class InputThread implements Runnable {
      */
     @Override
     public void run() {
-        ElevatorInput elevatorInput = new ElevatorInput(System.in);
+        thread = Thread.currentThread();
+        ElevatorInput elevatorInput = new ElevatorInput(
+                Clock.getInstance().wrapInput(SimulationContext.current().getInput()));
         int enterTime = 0;
+        // 从快照恢复时,快照之前已接收的请求已经在电梯和等待队列中,跳过它们
+        // 按原来的顺序登记下一条请求的唤醒事件
+        int skip = Scheduler.getInstance().getReceived();
+        if (Scheduler.getInstance().getInputOrder() >= 0) {
+            Clock.getInstance().setNextOrder(Scheduler.getInstance().getInputOrder());
+        }
         while (true) {
             Request request = elevatorInput.nextRequest();
             if (request == null) {
                 break;
+            } else if (skip > 0) {
+                skip--;
             } else {
                 // a new valid request
                 if (request instanceof PersonRequest) {
@@ -63,7 +80,7 @@ public class InputThread implements Runnable {
             e.printStackTrace();
         }
         try {
-            Thread.sleep(10);
+            Clock.getInstance().sleep(10);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,30 @@
+/**
+ * LOOK策略,不关注乘客的优先级:
+ * 前方还有乘客要下,或者未满载且前方、本层有同向乘客在等时保持方向,否则掉头
+ */
+public class LookPolicy implements DirectionPolicy {
+    @Override
+    public Direction choose(Elevator elevator, Cabin cabin, WaitingLine line) {
+        int floor = elevator.getCurrentFloor();
+        if (elevator.getDirection() == Direction.UP) {
+            if (cabin.hasStopAbove(floor)) {
+                // 电梯方向保持不变
+                return Direction.UP;
+            }
+            // 如果当前电梯未满载,可以判断电梯外等待中的乘客请求
+            if (!elevator.full() && (line.hasWaitingAbove(floor)
+                    || line.hasWaitingAt(floor, Direction.UP))) {
+                return Direction.UP;
+            }
+            return Direction.DOWN;
+        }
+        if (cabin.hasStopBelow(floor)) {
+            return Direction.DOWN;
+        }
+        if (!elevator.full() && (line.hasWaitingBelow(floor)
+                || line.hasWaitingAt(floor, Direction.DOWN))) {
+            return Direction.DOWN;
+        }
+        return Direction.UP;
+    }
+}
@@ -1,9 +1,126 @@
 import com.oocourse.elevator1.TimableOutput;
+import utils.AsyncOutput;
+import utils.Building;
+import utils.Clock;
+import utils.EventLog;
+import utils.Metrics;
+import utils.ScaledClock;
+import utils.VirtualClock;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class MainClass {
     public static void main(String[] args) {
+        boolean virtual = "virtual".equals(System.getProperty("elevator.clock"));
+        // -Delevator.resume=文件 时从快照时刻继续模拟,输入仍为完整的请求序列,快照之前的请求会被跳过;
+        // 快照只能在虚拟时间下保存和恢复
+        Snapshot resume = null;
+        String resumePath = System.getProperty("elevator.resume");
+        if (resumePath != null && virtual) {
+            try {
+                resume = Snapshot.load(Paths.get(resumePath));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        // -Delevator.snapshot=30000,文件 时把虚拟时间30000ms时的状态写入该文件;
+        // 在启动任何线程之前检查格式,格式错误时直接退出
+        long snapshotTime = -1;
+        String snapshotPath = null;
+        String snapshot = System.getProperty("elevator.snapshot");
+        if (snapshot != null && virtual) {
+            String[] parts = snapshot.split(",", 2);
+            try {
+                snapshotTime = Long.parseLong(parts[0].trim());
+            } catch (NumberFormatException e) {
+                snapshotTime = -1;
+            }
+            if (snapshotTime < 0 || parts.length < 2 || parts[1].trim().isEmpty()) {
+                System.err.println("usage: -Delevator.snapshot=<time ms>,<file>, got " + snapshot);
+                return;
+            }
+            snapshotPath = parts[1].trim();
+        }
+        // -Delevator.clock=virtual 时按输入中的时间戳在虚拟时间上模拟,不再真实休眠
+        if (virtual) {
+            Clock.setInstance(resume == null ? new VirtualClock(System.out)
+                    : new VirtualClock(System.out, resume.getTime(), resume.getSequence()));
+        } else if (System.getProperty("elevator.speed") != null) {
+            // -Delevator.speed=10 时按输入中的时间戳以10倍速在真实时间上回放
+            Clock.setInstance(new ScaledClock(System.out,
+                    Double.parseDouble(System.getProperty("elevator.speed"))));
+        }
+        // -Delevator.threads=virtual 时电梯和输入线程都运行在虚拟线程上,
+        // 线程数不再随电梯数增长;JDK 21以下仍使用平台线程
+        if ("virtual".equals(System.getProperty("elevator.threads"))) {
+            Clock.getInstance().setThreadFactory(Clock.virtualThreadFactory("sim-"));
+        }
         TimableOutput.initStartTimestamp();
-        Scheduler.getInstance();
-        new Thread(InputThread.getInstance()).start();
+        // -Delevator.output=async 时电梯只登记输出,由单独的输出线程批量写出
+        AsyncOutput output = null;
+        if ("async".equals(System.getProperty("elevator.output"))) {
+            output = AsyncOutput.start(System.out, Clock.getInstance(), 4096);
+            Clock.getInstance().setOutput(output);
+        }
+        // -Delevator.metrics=文件 时在结束时把运行指标写入该文件,
+        // 另加-Delevator.metricsPeriod=1000 时每隔1000ms(真实时间)追加一次快照
+        String metrics = System.getProperty("elevator.metrics");
+        if (metrics != null && Long.getLong("elevator.metricsPeriod", 0) > 0) {
+            Metrics.getInstance().startReporter(metrics, Long.getLong("elevator.metricsPeriod"));
+        }
+        // -Delevator.events=文件 时另把ARRIVE/OPEN/CLOSE/IN/OUT事件写入二进制事件日志
+        EventLog eventLog = null;
+        String events = System.getProperty("elevator.events");
+        if (events != null) {
+            try {
+                eventLog = new EventLog(Paths.get(events), Clock.getInstance(),
+                        Building.getInstance());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            Clock.getInstance().setEventLog(eventLog);
+        }
+        // 电梯、输入线程和快照线程都登记了各自的事件之后,虚拟时间才开始推进
+        // 启动过程中出现异常时也要放开时钟,否则已启动的线程会一直等待
+        Clock.getInstance().hold();
+        try {
+            Scheduler scheduler = resume == null
+                    ? Scheduler.getInstance() : Scheduler.resume(resume);
+            Clock.getInstance().start(InputThread.getInstance());
+            if (snapshotPath != null) {
+                Path path = Paths.get(snapshotPath);
+                scheduler.captureAt(snapshotTime, state -> {
+                    try {
+                        state.save(path);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    System.err.println(state);
+                });
+            }
+        } finally {
+            Clock.getInstance().release();
+        }
+        try {
+            Clock.getInstance().awaitTermination();
+            if (output != null) {
+                output.close();
+            }
+            if (eventLog != null) {
+                eventLog.close();
+            }
+            if (metrics != null) {
+                Metrics.getInstance().stopReporter();
+                Clock clock = Clock.getInstance();
+                Metrics.getInstance().dump(metrics, String.format("metrics at %.3fs",
+                        (clock.currentTimeMillis() - clock.origin()) / 1000.0));
+            }
+        } catch (InterruptedException | IOException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -1,19 +1,68 @@
 import com.oocourse.elevator1.PersonRequest;
+import utils.Clock;
 
-public class Passenger {
+import static utils.FloorConverter.floorString2Int;
+
+/**
+ * 乘客请求的不可变表示
+ * 楼层字符串在构造时一次性解析为整数,此后调度与电梯线程只读取这些基本类型字段
+ */
+public final class Passenger {
+    private final int personId;
+    private final int fromFloor;
+    private final int toFloor;
+    private final Direction direction;
+    private final int priority;
+    private final int elevatorId;
     private final long enterTime;
-    private final PersonRequest request;
 
+    public Passenger(int personId, int fromFloor, int toFloor, int priority,
+                     int elevatorId, long enterTime) {
+        this.personId = personId;
+        this.fromFloor = fromFloor;
+        this.toFloor = toFloor;
+        this.direction = toFloor > fromFloor ? Direction.UP : Direction.DOWN;
+        this.priority = priority;
+        this.elevatorId = elevatorId;
+        this.enterTime = enterTime;
+    }
+
+    /**
+     * 由输入的请求构造乘客,以当前时间作为进入时间
+     *
+     * @param request 输入的乘客请求
+     */
     public Passenger(PersonRequest request) {
-        this.enterTime = System.currentTimeMillis();
-        this.request = request;
+        this(request.getPersonId(), floorString2Int(request.getFromFloor()),
+                floorString2Int(request.getToFloor()), request.getPriority(),
+                request.getElevatorId(), Clock.getInstance().currentTimeMillis());
     }
 
-    public long getEnterTime() {
-        return enterTime;
+    public int getPersonId() {
+        return personId;
+    }
+
+    public int getFromFloor() {
+        return fromFloor;
+    }
+
+    public int getToFloor() {
+        return toFloor;
     }
 
-    public PersonRequest getRequest() {
-        return request;
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getElevatorId() {
+        return elevatorId;
+    }
+
+    public long getEnterTime() {
+        return enterTime;
     }
 }
@@ -1,42 +1,219 @@
+import utils.Building;
+import utils.Building.ElevatorSpec;
+import utils.Clock;
+import utils.Histogram;
+import utils.Metrics;
+import utils.SimulationContext;
+import utils.SlidingHistogram;
+import utils.VirtualClock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.TreeSet;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-import static utils.FloorConverter.floorString2Int;
+import static utils.FloorConverter.floor2Index;
+import static utils.FloorConverter.index2Floor;
+import static utils.FloorConverter.numFloors;
 
 public class Scheduler {
-    private static final Scheduler instance = new Scheduler();
-    private static final int NUM_ELEVATORS = 6;
-    private static final int NUM_FLOORS = 11;
+    // 需求统计窗口的长度及其划分的时间槽数
+    private static final long DEMAND_WINDOW = 20_000; // unit: ms
+    private static final int DEMAND_SLOTS = 10;
+    // 窗口内至少有这么多请求才预测停泊楼层
+    private static final int DEMAND_SAMPLES = 3;
+    // 需求模型的衰减时间常数
+    private static final long DEMAND_TAU = 30_000; // unit: ms
     private final CopyOnWriteArrayList<Elevator> elevators;
-    // 等待中的乘客列表
-    private final List<TreeSet<Passenger>> waitingLine;
+    // 每部电梯的等待队列,按楼层和方向索引
+    private final List<WaitingLine> waitingLine;
+    // 电梯分配策略
+    private final Dispatcher dispatcher;
+    // 电梯的方向策略
+    private final DirectionPolicy directionPolicy;
+    // 各电梯最近一段时间内分到的请求的出发楼层分布,用于预测空闲电梯的停泊楼层
+    private final List<SlidingHistogram> demand;
+    // 所有请求按出发楼层和方向的到达率估计
+    private final DemandModel demandModel;
+    // 所在建筑的最低楼层,楼层下标以它为0
+    private final int minFloor;
+    // 每收到这么多请求向标准错误输出一次需求模型快照,为0时不输出
+    private final int demandStats;
+    // 已接收的请求数
+    private volatile int received;
+    // 从快照恢复时输入线程等待下一条请求的唤醒事件的登记顺序,没有时为-1
+    private long inputOrder = -1;
+    // 是否让空闲电梯驶向预测的需求楼层
+    private final boolean parking;
+    // 运行指标:各电梯分到的请求数、改派给它的乘客数,以及改派时获取其他电梯监视器的等待时间(ns)
+    private final List<LongAdder> dispatched;
+    private final List<LongAdder> reassigned;
+    private final Histogram rebalanceWait;
 
-    private Scheduler() {
+    /**
+     * @param snapshot 要恢复的快照,为null时从空闲的初始状态开始
+     * @throws IllegalArgumentException 如果快照与建筑不符
+     */
+    private Scheduler(Snapshot snapshot) {
+        SimulationContext context = SimulationContext.current();
+        // -Delevator.dispatch=global 时忽略请求指定的电梯,按估计代价全局分配
+        dispatcher = "global".equals(context.getProperty("elevator.dispatch"))
+                ? new CostDispatcher() : new FixedDispatcher();
+        // -Delevator.direction=aging 时按优先级和等待时间加权,必要时提前掉头(实验性)
+        directionPolicy = "aging".equals(context.getProperty("elevator.direction"))
+                ? new AgingPolicy() : new LookPolicy();
+        // -Delevator.parking=demand 时空闲电梯驶向近期请求出发楼层的中位数
+        parking = "demand".equals(context.getProperty("elevator.parking"));
+        demandModel = new DemandModel(DEMAND_TAU);
+        minFloor = Building.getInstance().getMinFloor();
+        // -Delevator.demandStats=50 时每收到50个请求输出一次需求模型快照
+        demandStats = context.getInteger("elevator.demandStats", 0);
+        // 电梯的数量和参数取自建筑配置,ID从1开始连续编号
+        List<ElevatorSpec> specs = Building.getInstance().getElevators();
         elevators = new CopyOnWriteArrayList<>();
-        waitingLine = new ArrayList<>(NUM_ELEVATORS);
-        for (int i = 0; i < NUM_FLOORS; i++) {
-            // 使用 Comparator.comparingInt(Passenger::getPriority).reversed() 使优先级高的排前面
-            waitingLine.add(new TreeSet<>(
-                    Comparator.comparingInt((Passenger p) -> p.getRequest().getPriority())
-                    .reversed().thenComparingLong(Passenger::getEnterTime)));
+        waitingLine = new ArrayList<>(specs.size());
+        demand = new ArrayList<>(specs.size());
+        dispatched = new ArrayList<>(specs.size());
+        reassigned = new ArrayList<>(specs.size());
+        rebalanceWait = Metrics.getInstance().histogram("scheduler.rebalanceWaitNs");
+        for (int i = 0; i < specs.size(); i++) {
+            waitingLine.add(new WaitingLine());
+            demand.add(new SlidingHistogram(numFloors(), DEMAND_WINDOW, DEMAND_SLOTS));
+            dispatched.add(Metrics.getInstance().counter("elevator." + (i + 1) + ".dispatched"));
+            reassigned.add(Metrics.getInstance().counter("elevator." + (i + 1) + ".reassigned"));
+        }
+        for (ElevatorSpec spec : specs) {
+            elevators.add(new Elevator(spec, directionPolicy));
+        }
+        if (snapshot != null) {
+            restore(snapshot);
+        }
+        for (Elevator elevator : elevators) {
+            Clock.getInstance().start(elevator); // 启动电梯线程
+        }
+    }
+
+    /**
+     * 从快照创建当前模拟的调度器,电梯从快照时刻的状态继续运行
+     * 须在调度器创建之前、{@link Clock#hold()}期间调用,时钟应是以快照的时刻和事件登记计数
+     * 构造的{@link VirtualClock},否则恢复的电梯可能在输入线程启动之前就推进了时间
+     *
+     * @param snapshot 快照
+     * @return 当前模拟中Scheduler的唯一实例
+     * @throws IllegalArgumentException 如果快照与建筑不符
+     */
+    public static Scheduler resume(Snapshot snapshot) {
+        return SimulationContext.current().component(Scheduler.class,
+                () -> new Scheduler(snapshot));
+    }
+
+    /**
+     * 保存当前模拟的完整状态
+     * 须在所有受管理的线程都处于休眠或空闲等待时调用,即在虚拟时钟上由一个受管理的线程在它醒来时调用:
+     * 虚拟时钟每次只唤醒一个线程,此刻其他电梯都停在耗时动作或空闲等待中,状态是一致的。
+     * 真实时间下电梯各自运行,无法得到一致的快照
+     *
+     * @return 快照
+     * @throws IllegalStateException 如果当前模拟不使用虚拟时钟
+     */
+    public Snapshot capture() {
+        if (!(Clock.getInstance() instanceof VirtualClock)) {
+            throw new IllegalStateException("Snapshots require a virtual clock");
+        }
+        VirtualClock clock = (VirtualClock) Clock.getInstance();
+        List<Snapshot.ElevatorState> states = new ArrayList<>(elevators.size());
+        for (Elevator elevator : elevators) {
+            states.add(elevator.capture(getWaitingLine(elevator.getId()), clock));
+        }
+        Thread input = InputThread.getInstance().getThread();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(buffer);
+            for (SlidingHistogram histogram : demand) {
+                histogram.writeTo(out);
+            }
+            demandModel.writeTo(out);
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+        return new Snapshot(clock.currentTimeMillis(), received, clock.getSequence(),
+                input == null ? -1 : clock.getWakeOrder(input), states, buffer.toByteArray());
+    }
+
+    /**
+     * 启动一个受时钟管理的线程,在指定时刻保存快照并交给action处理,只适用于虚拟时钟
+     * 该线程先于同一时刻的其他事件醒来,快照即为该时刻开始时的状态,它也不占用事件登记计数,
+     * 因此保存快照不影响模拟本身。须在{@link Clock#hold()}期间与输入线程一起启动,
+     * 否则时钟可能在输入线程登记唤醒事件之前就越过快照时刻
+     *
+     * @param time   快照时刻,单位ms
+     * @param action 处理快照的方法,在该线程中调用
+     */
+    public void captureAt(long time, Consumer<Snapshot> action) {
+        Clock.getInstance().start(() -> {
+            Clock clock = Clock.getInstance();
+            clock.setNextOrder(Long.MIN_VALUE);
+            try {
+                clock.sleep(time - clock.currentTimeMillis());
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+            action.accept(capture());
+        });
+    }
+
+    private void restore(Snapshot snapshot) {
+        if (snapshot.getElevators().size() != elevators.size()) {
+            throw new IllegalArgumentException("Snapshot does not match the building");
+        }
+        for (Elevator elevator : elevators) {
+            elevator.restore(snapshot.getElevators().get(elevator.getId() - 1),
+                    getWaitingLine(elevator.getId()));
         }
-        for (int i = 1; i <= NUM_ELEVATORS; i++) {
-            Elevator elevator = new Elevator(i);
-            elevators.add(elevator);
-            new Thread(elevator).start(); // 启动电梯线程
+        try {
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(snapshot.getDemand()));
+            for (SlidingHistogram histogram : demand) {
+                histogram.readFrom(in);
+            }
+            demandModel.readFrom(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Snapshot does not match the building", e);
         }
+        received = snapshot.getReceived();
+        inputOrder = snapshot.getInputOrder();
+    }
+
+    /**
+     * @return 已接收的请求数,从快照恢复时包括快照之前接收的请求
+     */
+    public int getReceived() {
+        return received;
+    }
+
+    /**
+     * @return 从快照恢复时输入线程下一次休眠应使用的登记顺序,没有时为-1
+     */
+    long getInputOrder() {
+        return inputOrder;
     }
 
     /**
-     * 获取调度器的单例实例
+     * 获取当前模拟的调度器,第一次获取时创建并启动所有电梯
      *
-     * @return Scheduler的单例实例
+     * @return 当前模拟中Scheduler的唯一实例
      */
     public static Scheduler getInstance() {
-        return instance;
+        return SimulationContext.current().component(Scheduler.class,
+                () -> new Scheduler(null));
     }
 
     /**
@@ -53,11 +230,89 @@ public class Scheduler {
      * @param passenger 乘客请求对象，包含出发楼层、目标楼层等信息
      */
     public void recieveRequest(Passenger passenger) {
-        int elevatorId = passenger.getRequest().getElevatorId();
-        synchronized (getInstance().waitingLine.get(elevatorId - 1)) {
-            waitingLine.get(elevatorId - 1).add(passenger);
-            getInstance().waitingLine.get(elevatorId - 1).notify();
+        int elevatorId = dispatcher.dispatch(passenger, elevators);
+        // 出发楼层的下标只算一次,两个需求统计共用
+        int index = floor2Index(passenger.getFromFloor(), minFloor);
+        demand.get(elevatorId - 1).record(index, passenger.getEnterTime());
+        demandModel.record(passenger, index);
+        dispatched.get(elevatorId - 1).increment();
+        // 请求只由输入线程逐个处理,计数不需要同步
+        received++;
+        if (demandStats > 0 && received % demandStats == 0) {
+            System.err.println(demandModel.snapshot(passenger.getEnterTime()));
         }
+        // 无锁投递后唤醒电梯,输入线程不会等待电梯释放任何锁
+        waitingLine.get(elevatorId - 1).offer(passenger);
+        elevators.get(elevatorId - 1).wakeUp();
+    }
+
+    /**
+     * 电梯空闲时,把其他电梯中由它来接更快的、尚未上车的乘客改派给它
+     * 每次只持有一部电梯的锁,从原队列取出后投递到空闲电梯的收件箱。
+     * 分配策略不会改派时直接返回;等待楼层中没有空闲电梯停靠的楼层时不锁该队列
+     *
+     * @param idle 空闲的电梯
+     */
+    public void rebalance(Elevator idle) {
+        if (!dispatcher.canReassign()) {
+            return;
+        }
+        List<Passenger> moved = new ArrayList<>();
+        long stops = idle.getStopMask();
+        for (Elevator owner : elevators) {
+            if (owner == idle || moved.size() >= idle.getCapacity()) {
+                continue;
+            }
+            WaitingLine line = getWaitingLine(owner.getId());
+            // 乘客的出发楼层必须是空闲电梯停靠的楼层,无锁读取位图即可排除
+            if ((line.getWaitingMask() & stops) == 0) {
+                continue;
+            }
+            long request = System.nanoTime();
+            synchronized (line) {
+                long acquired = System.nanoTime();
+                moved.addAll(line.extract(passenger -> idle.serves(passenger)
+                        && dispatcher.shouldReassign(passenger, owner, idle),
+                        idle.getCapacity() - moved.size()));
+                line.getLockStats().record(acquired - request, System.nanoTime() - acquired);
+                rebalanceWait.record(acquired - request);
+            }
+        }
+        reassigned.get(idle.getId() - 1).add(moved.size());
+        WaitingLine line = getWaitingLine(idle.getId());
+        for (Passenger passenger : moved) {
+            line.offer(passenger);
+        }
+    }
+
+    /**
+     * 预测空闲电梯的停泊楼层
+     * 取该电梯近期请求出发楼层的中位数,它使到下一位乘客出发楼层的期望距离最小;
+     * 这些请求都由该电梯接送,中位数必然是它停靠的楼层。
+     * 该电梯近期请求太少时,改用需求模型中到达率最高且它停靠的楼层
+     *
+     * @param elevator 空闲的电梯
+     * @return 停泊楼层,未启用停泊或没有可参考的请求时返回null
+     */
+    public Integer parkingFloor(Elevator elevator) {
+        if (!parking) {
+            return null;
+        }
+        long now = Clock.getInstance().currentTimeMillis();
+        int[] counts = new int[numFloors()];
+        int total = demand.get(elevator.getId() - 1).snapshot(now, counts);
+        if (total < DEMAND_SAMPLES) {
+            Integer busiest = demandModel.snapshot(now).getBusiestFloor();
+            return busiest != null && elevator.stopsAt(busiest) ? busiest : null;
+        }
+        int seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (2 * seen >= total) {
+                return index2Floor(i);
+            }
+        }
+        return null;
     }
 
     /**
@@ -74,13 +329,10 @@ public class Scheduler {
         if (elevator.full() && !leaveElevator) {
             return false;
         }
-        int id = elevator.getId();
-        for (Passenger passenger : waitingLine.get(id - 1)) {
-            if (floorString2Int(passenger.getRequest().getFromFloor()) == floor) {
-                return true;
-            }
-        }
-        return false;
+        // 只为会上电梯的乘客开门:与电梯同方向的乘客,或者电梯即将掉头时本层的所有乘客
+        WaitingLine line = getWaitingLine(elevator.getId());
+        return line.hasWaitingAt(floor, elevator.getDirection())
+                || (elevator.boardsBothWays(line) && line.hasWaitingAt(floor));
     }
 
     /**
@@ -92,7 +344,11 @@ public class Scheduler {
         }
     }
 
-    public TreeSet<Passenger> getWaitingLine(int elevatorId) {
+    public DemandModel getDemandModel() {
+        return demandModel;
+    }
+
+    public WaitingLine getWaitingLine(int elevatorId) {
         return waitingLine.get(elevatorId-1);
     }
 }
@@ -0,0 +1,177 @@
+import utils.Building;
+import utils.Clock;
+import utils.Metrics;
+import utils.SimulationContext;
+import utils.TraceChecker;
+import utils.VirtualClock;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * 一次独立的模拟:在自己的{@link SimulationContext}中,以虚拟时间回放一份带时间戳的输入
+ * 建筑、配置、调度器、电梯和时钟都只属于本次模拟,电梯和输入线程运行在虚拟线程上(JDK 21以下为平台线程),
+ * 因此同一个JVM中可以同时运行任意多次模拟,例如在不同配置下回放同一份输入以比较调度策略。
+ * 结果与在单独的JVM中以 -Delevator.clock=virtual 运行相同。
+ * <p>
+ * 模拟可以在指定时刻保存{@link Snapshot},也可以从快照继续:同一个快照交给多个采用不同配置的模拟,
+ * 即可比较各策略在相同的预热状态下的表现,而不必为每个策略重新模拟预热阶段
+ */
+public class Simulation {
+    private final Building building;
+    private final Properties properties;
+    private final String input;
+    // 要恢复的快照,为null时从初始状态开始
+    private final Snapshot resume;
+    // 保存快照的时刻,单位ms,为负时不保存
+    private long snapshotTime = -1;
+    private volatile Snapshot snapshot;
+    private String output;
+    private Metrics metrics;
+
+    /**
+     * @param building   建筑
+     * @param properties 本次模拟的配置项,例如elevator.dispatch,未设置的项取系统属性
+     * @param input      带时间戳的输入,格式与标准输入相同
+     */
+    public Simulation(Building building, Properties properties, String input) {
+        this(building, properties, input, null);
+    }
+
+    /**
+     * 从快照时刻继续的模拟,输入仍为完整的请求序列,快照之前的请求会被跳过
+     * 检查结果只统计快照之后的输出
+     *
+     * @param building   建筑,须与保存快照时相同
+     * @param properties 本次模拟的配置项,可以与保存快照时不同
+     * @param input      带时间戳的完整输入
+     * @param resume     快照,为null时从初始状态开始
+     */
+    public Simulation(Building building, Properties properties, String input, Snapshot resume) {
+        this.building = building;
+        this.properties = properties;
+        this.input = input;
+        this.resume = resume;
+    }
+
+    /**
+     * 运行到指定时刻为止并保存快照,用作其他模拟的起点
+     * 只回放到时间戳不早于该时刻的第一条请求,快照之后的模拟很快结束,输出不完整,不做检查
+     *
+     * @param building   建筑
+     * @param properties 预热阶段的配置项
+     * @param input      带时间戳的完整输入
+     * @param time       快照时刻,单位ms
+     * @return 快照,模拟被中断或在该时刻之前就已结束时返回null
+     */
+    public static Snapshot capture(Building building, Properties properties, String input,
+                                   long time) {
+        // 快照时刻输入线程正等待这一条请求,截去之后的请求不影响快照
+        StringBuilder head = new StringBuilder();
+        for (String line : input.split("\n")) {
+            head.append(line).append('\n');
+            int end = line.indexOf(']');
+            if (line.startsWith("[") && end > 0
+                    && (long) (Double.parseDouble(line.substring(1, end)) * 1000 + 0.5) >= time) {
+                break;
+            }
+        }
+        Simulation simulation = new Simulation(building, properties, head.toString());
+        simulation.snapshotAt(time);
+        simulation.execute();
+        return simulation.getSnapshot();
+    }
+
+    /**
+     * 在运行到指定时刻时保存快照,须在{@link #run()}之前调用
+     *
+     * @param time 快照时刻,单位ms,不早于恢复的快照时刻
+     */
+    public void snapshotAt(long time) {
+        snapshotTime = time;
+    }
+
+    /**
+     * @return {@link #snapshotAt(long)}指定时刻的快照,尚未运行到该时刻时为null
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 运行模拟直到所有电梯停止,并检查输出
+     *
+     * @return 检查结果与性能指标,模拟被中断时返回null
+     */
+    public TraceChecker.Report run() {
+        if (!execute()) {
+            return null;
+        }
+        TraceChecker checker = new TraceChecker(
+                new BufferedReader(new StringReader(input)), building);
+        if (resume != null) {
+            resume.prepare(checker);
+        }
+        output.lines().forEach(checker::accept);
+        return checker.finish();
+    }
+
+    /**
+     * 运行模拟直到所有电梯停止
+     *
+     * @return 是否正常结束
+     */
+    private boolean execute() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        SimulationContext context = new SimulationContext(building, properties,
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+        boolean[] finished = new boolean[1];
+        context.run(() -> {
+            PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+            Clock clock = resume == null ? new VirtualClock(out)
+                    : new VirtualClock(out, resume.getTime(), resume.getSequence());
+            clock.setThreadFactory(Clock.virtualThreadFactory("sim-"));
+            Clock.setInstance(clock);
+            clock.hold();
+            Scheduler scheduler = resume == null
+                    ? Scheduler.getInstance() : Scheduler.resume(resume);
+            clock.start(InputThread.getInstance());
+            if (snapshotTime >= 0) {
+                scheduler.captureAt(snapshotTime, state -> snapshot = state);
+            }
+            clock.release();
+            try {
+                clock.awaitTermination();
+                finished[0] = true;
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            out.flush();
+        });
+        if (!finished[0]) {
+            return false;
+        }
+        output = buffer.toString(StandardCharsets.UTF_8);
+        metrics = context.getMetrics();
+        return true;
+    }
+
+    /**
+     * @return 上一次运行的输出,尚未运行完成时为null
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * @return 上一次运行的运行指标,尚未运行完成时为null
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,360 @@
+import utils.FloorConverter;
+import utils.TraceChecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 模拟在某一时刻的完整状态:各电梯的位置、方向、门和轿厢内的乘客,各等待队列,
+ * 正在执行的耗时动作及其截止时刻,以及调度器的需求统计和已接收的请求数
+ * 由{@link Scheduler#capture()}在所有受管理的线程都停下来时生成,
+ * 交给{@link Scheduler#resume(Snapshot)}即可从该时刻继续模拟,同一快照可以多次恢复为采用不同策略的模拟。
+ * 快照本身不可变,以紧凑的二进制格式读写,每位乘客占17字节,轿厢内的乘客另加8字节的进入时刻。
+ * 运行指标不属于快照,恢复后从零开始计数
+ */
+public final class Snapshot {
+    // 文件头"ESNP"及格式版本
+    private static final int MAGIC = 0x45534E50;
+    private static final int VERSION = 1;
+    // 快照时刻,单位ms
+    private final long time;
+    // 快照之前调度器已接收的请求数,恢复时输入线程跳过这么多条请求
+    private final int received;
+    // 虚拟时钟的事件登记计数,以及输入线程等待下一条请求的唤醒事件的登记顺序(没有时为-1),
+    // 恢复后同一时刻的事件仍按原来的顺序唤醒,模拟结果与不中断时完全相同
+    private final long sequence;
+    private final long inputOrder;
+    // 按ID排列的电梯状态
+    private final List<ElevatorState> elevators;
+    // 调度器的需求统计,格式由调度器决定
+    private final byte[] demand;
+
+    Snapshot(long time, int received, long sequence, long inputOrder,
+             List<ElevatorState> elevators, byte[] demand) {
+        this.time = time;
+        this.received = received;
+        this.sequence = sequence;
+        this.inputOrder = inputOrder;
+        this.elevators = Collections.unmodifiableList(elevators);
+        this.demand = demand;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    /**
+     * @return 快照时虚拟时钟的事件登记计数,恢复时交给{@link utils.VirtualClock}的构造方法
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    long getInputOrder() {
+        return inputOrder;
+    }
+
+    public List<ElevatorState> getElevators() {
+        return elevators;
+    }
+
+    byte[] getDemand() {
+        return demand;
+    }
+
+    /**
+     * 让检查器从快照时刻开始检查:跳过已接收的请求,登记各电梯的位置和门,以及尚未送达的乘客
+     * 此后的报告只统计快照之后的输出,尚未送达的乘客仍按原到达时刻计算完成时间
+     *
+     * @param checker 尚未检查任何输出的检查器,其输入为完整的请求序列
+     */
+    public void prepare(TraceChecker checker) {
+        checker.skipRequests(received);
+        for (int i = 0; i < elevators.size(); i++) {
+            ElevatorState state = elevators.get(i);
+            checker.resumeElevator(i + 1, state.floor,
+                    state.state == Elevator.State.DOOR_OPEN, state.lastStamp, state.riders.size());
+            for (Passenger passenger : state.riders) {
+                checker.resumePassenger(passenger.getPersonId(), passenger.getEnterTime(),
+                        passenger.getPriority(), passenger.getFromFloor(),
+                        passenger.getToFloor(), i + 1);
+            }
+            List<Passenger> waiting = new ArrayList<>(state.waiting);
+            waiting.addAll(state.inbox);
+            for (Passenger passenger : waiting) {
+                checker.resumePassenger(passenger.getPersonId(), passenger.getEnterTime(),
+                        passenger.getPriority(), passenger.getFromFloor(),
+                        passenger.getToFloor(), 0);
+            }
+        }
+    }
+
+    /**
+     * 以二进制格式写出快照
+     *
+     * @param out 输出目标
+     * @throws IOException 写出失败
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(time);
+        out.writeInt(received);
+        out.writeLong(sequence);
+        out.writeLong(inputOrder);
+        out.writeInt(elevators.size());
+        for (ElevatorState state : elevators) {
+            state.write(out);
+        }
+        out.writeInt(demand.length);
+        out.write(demand);
+    }
+
+    /**
+     * 读取{@link #write(DataOutput)}写出的快照
+     *
+     * @param in 输入
+     * @return 快照
+     * @throws IOException 读取失败或格式不正确
+     */
+    public static Snapshot read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snapshot");
+        }
+        long time = in.readLong();
+        int received = in.readInt();
+        long sequence = in.readLong();
+        long inputOrder = in.readLong();
+        int count = in.readInt();
+        List<ElevatorState> elevators = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elevators.add(ElevatorState.read(in));
+        }
+        byte[] demand = new byte[in.readInt()];
+        in.readFully(demand);
+        return new Snapshot(time, received, sequence, inputOrder, elevators, demand);
+    }
+
+    /**
+     * 把快照写入文件
+     *
+     * @param path 文件路径
+     * @throws IOException 写出失败
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            write(out);
+        }
+    }
+
+    /**
+     * 读取{@link #save(Path)}写入的快照文件
+     *
+     * @param path 文件路径
+     * @return 快照
+     * @throws IOException 读取失败或格式不正确
+     */
+    public static Snapshot load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            return read(in);
+        }
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            write(new DataOutputStream(buffer));
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    public static Snapshot fromBytes(byte[] bytes) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * 形如"snapshot@12.300s received=50 | 1 F3 UP DOOR_OPEN riders=4 waiting=2 | ..."的一行摘要
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(
+                "snapshot@%.3fs received=%d", time / 1000.0, received));
+        for (int i = 0; i < elevators.size(); i++) {
+            ElevatorState state = elevators.get(i);
+            builder.append(String.format(" | %d %s %s %s riders=%d waiting=%d", i + 1,
+                    FloorConverter.floorInt2String(state.floor), state.direction,
+                    state.state, state.riders.size(), state.waiting.size() + state.inbox.size()));
+        }
+        return builder.toString();
+    }
+
+    private static void writePassenger(DataOutput out, Passenger passenger) throws IOException {
+        out.writeInt(passenger.getPersonId());
+        out.writeByte(passenger.getFromFloor());
+        out.writeByte(passenger.getToFloor());
+        out.writeByte(passenger.getPriority());
+        out.writeShort(passenger.getElevatorId());
+        out.writeLong(passenger.getEnterTime());
+    }
+
+    private static Passenger readPassenger(DataInput in) throws IOException {
+        int personId = in.readInt();
+        int fromFloor = in.readByte();
+        int toFloor = in.readByte();
+        int priority = in.readUnsignedByte();
+        int elevatorId = in.readShort();
+        return new Passenger(personId, fromFloor, toFloor, priority, elevatorId, in.readLong());
+    }
+
+    private static void writePassengers(DataOutput out, List<Passenger> passengers)
+            throws IOException {
+        out.writeInt(passengers.size());
+        for (Passenger passenger : passengers) {
+            writePassenger(out, passenger);
+        }
+    }
+
+    private static List<Passenger> readPassengers(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<Passenger> passengers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            passengers.add(readPassenger(in));
+        }
+        return passengers;
+    }
+
+    /**
+     * 单部电梯及其等待队列在快照时刻的状态
+     */
+    public static final class ElevatorState {
+        final Elevator.State state;
+        // 快照时正在执行的耗时动作,没有时为null,以及它的截止时刻(ns)和唤醒事件的登记顺序
+        final Elevator.Action pending;
+        final long deadline;
+        final long order;
+        // 最后一行输出的时间戳,单位ms
+        final long lastStamp;
+        final int floor;
+        final Direction direction;
+        final boolean idle;
+        final boolean parking;
+        final boolean terminating;
+        final long movedFloors;
+        final long parkedFloors;
+        // 轿厢内的乘客及其进入电梯的时刻
+        final List<Passenger> riders;
+        final long[] boardTimes;
+        // 已并入等待队列的乘客,以及收件箱中尚未并入的乘客
+        final List<Passenger> waiting;
+        final List<Passenger> inbox;
+
+        ElevatorState(Elevator.State state, Elevator.Action pending, long deadline, long order,
+                      long lastStamp, int floor, Direction direction, boolean idle,
+                      boolean parking, boolean terminating, long movedFloors, long parkedFloors,
+                      List<Passenger> riders, long[] boardTimes,
+                      List<Passenger> waiting, List<Passenger> inbox) {
+            this.state = state;
+            this.pending = pending;
+            this.deadline = deadline;
+            this.order = order;
+            this.lastStamp = lastStamp;
+            this.floor = floor;
+            this.direction = direction;
+            this.idle = idle;
+            this.parking = parking;
+            this.terminating = terminating;
+            this.movedFloors = movedFloors;
+            this.parkedFloors = parkedFloors;
+            this.riders = riders;
+            this.boardTimes = boardTimes;
+            this.waiting = waiting;
+            this.inbox = inbox;
+        }
+
+        public int getFloor() {
+            return floor;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        /**
+         * @return 轿厢内的乘客
+         */
+        public List<Passenger> getRiders() {
+            return Collections.unmodifiableList(riders);
+        }
+
+        /**
+         * @return 等待该电梯的乘客,包括收件箱中尚未并入的
+         */
+        public int getWaitingCount() {
+            return waiting.size() + inbox.size();
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeByte(state.ordinal());
+            out.writeByte(pending == null ? -1 : pending.ordinal());
+            out.writeLong(deadline);
+            out.writeLong(order);
+            out.writeLong(lastStamp);
+            out.writeByte(floor);
+            out.writeByte(direction.ordinal());
+            out.writeByte((idle ? 1 : 0) | (parking ? 2 : 0) | (terminating ? 4 : 0));
+            out.writeLong(movedFloors);
+            out.writeLong(parkedFloors);
+            writePassengers(out, riders);
+            for (long boardTime : boardTimes) {
+                out.writeLong(boardTime);
+            }
+            writePassengers(out, waiting);
+            writePassengers(out, inbox);
+        }
+
+        private static ElevatorState read(DataInput in) throws IOException {
+            Elevator.State state = Elevator.State.values()[in.readByte()];
+            int pending = in.readByte();
+            long deadline = in.readLong();
+            long order = in.readLong();
+            long lastStamp = in.readLong();
+            int floor = in.readByte();
+            Direction direction = Direction.values()[in.readByte()];
+            int flags = in.readByte();
+            long movedFloors = in.readLong();
+            long parkedFloors = in.readLong();
+            List<Passenger> riders = readPassengers(in);
+            long[] boardTimes = new long[riders.size()];
+            for (int i = 0; i < boardTimes.length; i++) {
+                boardTimes[i] = in.readLong();
+            }
+            List<Passenger> waiting = readPassengers(in);
+            List<Passenger> inbox = readPassengers(in);
+            return new ElevatorState(state, pending < 0 ? null : Elevator.Action.values()[pending],
+                    deadline, order, lastStamp, floor, direction,
+                    (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0,
+                    movedFloors, parkedFloors, riders, boardTimes, waiting, inbox);
+        }
+    }
+}
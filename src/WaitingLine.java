@@ -0,0 +1,442 @@
+import utils.Building;
+import utils.LockStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static utils.FloorConverter.floor2Index;
+import static utils.FloorConverter.index2Floor;
+import static utils.FloorConverter.numFloors;
+
+/**
+ * 单部电梯的等待队列,按出发楼层和方向分桶存放乘客
+ * 每个桶内按优先级从高到低、进入时间从早到晚排序,
+ * 同时用两个位图记录哪些楼层存在上行/下行的等待乘客,
+ * 使"某层是否有人等"、"楼上/楼下是否有人等"都成为O(1)的位运算
+ * <p>
+ * 新请求先通过无锁的{@link #offer(Passenger)}放入收件箱,不会被电梯的任何操作阻塞;
+ * 电梯线程在安全点调用{@link #drain()}把收件箱中的乘客并入各楼层的桶。
+ * 桶只由所属电梯和空闲时前来改派乘客的电梯访问,访问时需持有该对象的监视器
+ */
+public class WaitingLine {
+    // 桶内排序:优先级高的排前面,同优先级先到先得,最后用personId保证不会误判为同一乘客
+    private static final Comparator<Passenger> ORDER = Comparator.comparingInt(
+            Passenger::getPriority).reversed()
+            .thenComparingLong(Passenger::getEnterTime)
+            .thenComparingInt(Passenger::getPersonId);
+    // 各楼层上行乘客
+    private final PriorityQueue<Passenger>[] upBuckets;
+    // 各楼层下行乘客
+    private final PriorityQueue<Passenger>[] downBuckets;
+    // 尚未并入桶中的新请求,多个线程写入、所属电梯读取
+    private final ConcurrentLinkedQueue<Passenger> inbox;
+    // 收件箱中的乘客数及其优先级之和,供调度器估计代价
+    private final AtomicInteger pendingCount;
+    private final AtomicLong pendingPriority;
+    // 第i位为1表示下标为i的楼层有上行乘客在等
+    private volatile long upMask;
+    // 第i位为1表示下标为i的楼层有下行乘客在等
+    private volatile long downMask;
+    // 桶中等待的乘客总数
+    private volatile int size;
+    // 桶中等待的乘客优先级之和
+    private volatile long prioritySum;
+    // 各楼层上行、下行乘客的优先级之和,以及优先级与进入时间乘积之和,用于计算加权等待时间
+    private final long[] upPriority;
+    private final long[] upStamp;
+    private final long[] downPriority;
+    private final long[] downStamp;
+    // 所在建筑的最低楼层,楼层下标以它为0
+    private final int minFloor;
+    // 该对象作为监视器时的争用统计
+    private final LockStats lockStats;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WaitingLine() {
+        minFloor = Building.getInstance().getMinFloor();
+        int numFloors = numFloors();
+        upBuckets = new PriorityQueue[numFloors];
+        downBuckets = new PriorityQueue[numFloors];
+        for (int i = 0; i < numFloors; i++) {
+            upBuckets[i] = new PriorityQueue<>(ORDER);
+            downBuckets[i] = new PriorityQueue<>(ORDER);
+        }
+        upPriority = new long[numFloors];
+        upStamp = new long[numFloors];
+        downPriority = new long[numFloors];
+        downStamp = new long[numFloors];
+        inbox = new ConcurrentLinkedQueue<>();
+        pendingCount = new AtomicInteger();
+        pendingPriority = new AtomicLong();
+        lockStats = new LockStats();
+    }
+
+    /**
+     * 无锁地投递一位新乘客,可在任意线程调用
+     *
+     * @param passenger 乘客
+     */
+    public void offer(Passenger passenger) {
+        pendingCount.incrementAndGet();
+        pendingPriority.addAndGet(passenger.getPriority());
+        inbox.offer(passenger);
+    }
+
+    /**
+     * 把收件箱中的乘客并入各楼层的桶,由所属电梯在持有监视器时调用
+     */
+    public void drain() {
+        Passenger passenger;
+        while ((passenger = inbox.poll()) != null) {
+            add(passenger);
+            pendingCount.decrementAndGet();
+            pendingPriority.addAndGet(-passenger.getPriority());
+        }
+    }
+
+    /**
+     * @return 收件箱中是否有尚未并入的乘客
+     */
+    public boolean hasPending() {
+        return !inbox.isEmpty();
+    }
+
+    /**
+     * 复制桶中和收件箱中的所有乘客,用于保存快照,调用方需持有监视器
+     *
+     * @param waiting 桶中的乘客,按楼层和方向依次加入
+     * @param pending 收件箱中尚未并入的乘客,按投递顺序加入
+     */
+    public void copyTo(List<Passenger> waiting, List<Passenger> pending) {
+        for (int i = 0; i < upBuckets.length; i++) {
+            waiting.addAll(upBuckets[i]);
+            waiting.addAll(downBuckets[i]);
+        }
+        pending.addAll(inbox);
+    }
+
+    /**
+     * 加入一位等待的乘客
+     *
+     * @param passenger 乘客
+     */
+    public void add(Passenger passenger) {
+        int index = floor2Index(passenger.getFromFloor(), minFloor);
+        if (passenger.getDirection() == Direction.UP) {
+            upBuckets[index].add(passenger);
+            upMask |= 1L << index;
+        } else {
+            downBuckets[index].add(passenger);
+            downMask |= 1L << index;
+        }
+        account(passenger, index, 1);
+    }
+
+    /**
+     * 取出指定楼层、指定方向上优先级最高的乘客
+     *
+     * @param floor     楼层整型形式
+     * @param direction 乘客的运行方向
+     * @return 乘客,若不存在则返回null
+     */
+    public Passenger poll(int floor, Direction direction) {
+        int index = floor2Index(floor, minFloor);
+        PriorityQueue<Passenger> bucket;
+        switch (direction) {
+            case UP:
+                bucket = upBuckets[index];
+                break;
+            case DOWN:
+                bucket = downBuckets[index];
+                break;
+            default:
+                return null;
+        }
+        Passenger passenger = bucket.poll();
+        if (passenger == null) {
+            return null;
+        }
+        if (bucket.isEmpty()) {
+            if (direction == Direction.UP) {
+                upMask &= ~(1L << index);
+            } else {
+                downMask &= ~(1L << index);
+            }
+        }
+        account(passenger, index, -1);
+        return passenger;
+    }
+
+    /**
+     * 取出指定楼层上优先级最高的乘客,不区分方向
+     * 两个方向的桶都已按优先级排好序,每次比较两个队首即可按优先级从高到低依次取出
+     *
+     * @param floor 楼层整型形式
+     * @return 乘客,若该层无人等待则返回null
+     */
+    public Passenger pollBestAt(int floor) {
+        int index = floor2Index(floor, minFloor);
+        Passenger up = upBuckets[index].peek();
+        Passenger down = downBuckets[index].peek();
+        if (up == null && down == null) {
+            return null;
+        }
+        return poll(floor, better(up, down) == up ? Direction.UP : Direction.DOWN);
+    }
+
+    /**
+     * 取出满足条件的乘客,用于把尚未上车的乘客改派给其他电梯
+     *
+     * @param filter 取出条件
+     * @param limit  最多取出的人数
+     * @return 被取出的乘客
+     */
+    public List<Passenger> extract(Predicate<Passenger> filter, int limit) {
+        List<Passenger> extracted = new ArrayList<>();
+        long mask = upMask | downMask;
+        while (mask != 0 && extracted.size() < limit) {
+            int index = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            extractFrom(upBuckets[index], index, filter, limit, extracted);
+            extractFrom(downBuckets[index], index, filter, limit, extracted);
+            if (upBuckets[index].isEmpty()) {
+                upMask &= ~(1L << index);
+            }
+            if (downBuckets[index].isEmpty()) {
+                downMask &= ~(1L << index);
+            }
+        }
+        return extracted;
+    }
+
+    private void extractFrom(PriorityQueue<Passenger> bucket, int index,
+                             Predicate<Passenger> filter, int limit, List<Passenger> extracted) {
+        bucket.removeIf(passenger -> {
+            if (extracted.size() >= limit || !filter.test(passenger)) {
+                return false;
+            }
+            extracted.add(passenger);
+            account(passenger, index, -1);
+            return true;
+        });
+    }
+
+    /**
+     * 更新乘客总数和各项优先级统计
+     *
+     * @param sign 加入时为1,离开时为-1
+     */
+    private void account(Passenger passenger, int index, int sign) {
+        size += sign;
+        prioritySum += sign * passenger.getPriority();
+        long priority = sign * passenger.getPriority();
+        if (passenger.getDirection() == Direction.UP) {
+            upPriority[index] += priority;
+            upStamp[index] += priority * passenger.getEnterTime();
+        } else {
+            downPriority[index] += priority;
+            downStamp[index] += priority * passenger.getEnterTime();
+        }
+    }
+
+    /**
+     * 指定楼层是否有乘客在等待(不区分方向)
+     */
+    public boolean hasWaitingAt(int floor) {
+        return ((upMask | downMask) & (1L << floor2Index(floor, minFloor))) != 0;
+    }
+
+    /**
+     * 指定楼层是否有指定方向的乘客在等待
+     */
+    public boolean hasWaitingAt(int floor, Direction direction) {
+        long bit = 1L << floor2Index(floor, minFloor);
+        switch (direction) {
+            case UP:
+                return (upMask & bit) != 0;
+            case DOWN:
+                return (downMask & bit) != 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 指定楼层、指定方向上等待的乘客数
+     */
+    public int countAt(int floor, Direction direction) {
+        int index = floor2Index(floor, minFloor);
+        switch (direction) {
+            case UP:
+                return upBuckets[index].size();
+            case DOWN:
+                return downBuckets[index].size();
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return 第i位为1表示下标为i的楼层有乘客在等待,无需持有监视器即可读取
+     */
+    public long getWaitingMask() {
+        return upMask | downMask;
+    }
+
+    /**
+     * 指定楼层之上是否有乘客在等待
+     */
+    public boolean hasWaitingAbove(int floor) {
+        // 分两次左移,楼层下标为63时不会因一次移位64位而变成不移位
+        return ((upMask | downMask) & ((-1L << floor2Index(floor, minFloor)) << 1)) != 0;
+    }
+
+    /**
+     * 指定楼层之下是否有乘客在等待
+     */
+    public boolean hasWaitingBelow(int floor) {
+        return ((upMask | downMask) & ((1L << floor2Index(floor, minFloor)) - 1)) != 0;
+    }
+
+    /**
+     * 指定楼层之上等待乘客的优先级加权等待时间之和,即Σ优先级*(now-进入时间)
+     *
+     * @param floor 楼层整型形式
+     * @param now   计算等待时间的时刻,单位ms
+     */
+    public long waitingCostAbove(int floor, long now) {
+        return cost((upMask | downMask) & ((-1L << floor2Index(floor, minFloor)) << 1), now);
+    }
+
+    /**
+     * 指定楼层之下等待乘客的优先级加权等待时间之和
+     *
+     * @param floor 楼层整型形式
+     * @param now   计算等待时间的时刻,单位ms
+     */
+    public long waitingCostBelow(int floor, long now) {
+        return cost((upMask | downMask) & ((1L << floor2Index(floor, minFloor)) - 1), now);
+    }
+
+    /**
+     * 指定楼层、指定方向上等待乘客的优先级加权等待时间之和
+     *
+     * @param floor     楼层整型形式
+     * @param direction 乘客的运行方向
+     * @param now       计算等待时间的时刻,单位ms
+     */
+    public long waitingCostAt(int floor, Direction direction, long now) {
+        int index = floor2Index(floor, minFloor);
+        switch (direction) {
+            case UP:
+                return upPriority[index] * now - upStamp[index];
+            case DOWN:
+                return downPriority[index] * now - downStamp[index];
+            default:
+                return 0;
+        }
+    }
+
+    private long cost(long mask, long now) {
+        long cost = 0;
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            cost += (upPriority[index] + downPriority[index]) * now
+                    - upStamp[index] - downStamp[index];
+        }
+        return cost;
+    }
+
+    /**
+     * 查看指定楼层优先级最高的等待乘客
+     *
+     * @param floor 楼层整型形式
+     * @return 乘客,若该层无人等待则返回null
+     */
+    public Passenger peekBestAt(int floor) {
+        int index = floor2Index(floor, minFloor);
+        return better(upBuckets[index].peek(), downBuckets[index].peek());
+    }
+
+    /**
+     * 查看所有楼层中优先级最高的等待乘客,只需比较各非空桶的队首
+     *
+     * @return 乘客,若无人等待则返回null
+     */
+    public Passenger peekBest() {
+        Passenger best = null;
+        long mask = upMask | downMask;
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            best = better(best, better(upBuckets[index].peek(), downBuckets[index].peek()));
+        }
+        return best;
+    }
+
+    /**
+     * @return 有乘客等待的最高楼层,若无人等待则返回null
+     */
+    public Integer highestFloor() {
+        long mask = upMask | downMask;
+        return mask == 0 ? null : index2Floor(63 - Long.numberOfLeadingZeros(mask), minFloor);
+    }
+
+    /**
+     * @return 有乘客等待的最低楼层,若无人等待则返回null
+     */
+    public Integer lowestFloor() {
+        long mask = upMask | downMask;
+        return mask == 0 ? null : index2Floor(Long.numberOfTrailingZeros(mask), minFloor);
+    }
+
+    /**
+     * @return 有乘客等待的楼层数
+     */
+    public int floorCount() {
+        return Long.bitCount(upMask | downMask);
+    }
+
+    /**
+     * @return 桶中和收件箱中所有乘客的优先级之和
+     */
+    public long getPrioritySum() {
+        return prioritySum + pendingPriority.get();
+    }
+
+    /**
+     * @return 桶中和收件箱中的乘客总数,无需持有监视器即可读取
+     */
+    public int backlog() {
+        return size + pendingCount.get();
+    }
+
+    public LockStats getLockStats() {
+        return lockStats;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static Passenger better(Passenger a, Passenger b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return ORDER.compare(a, b) <= 0 ? a : b;
+    }
+}
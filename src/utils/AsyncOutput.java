@@ -0,0 +1,176 @@
+package utils;
+
+import java.io.PrintStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步批量输出
+ * 电梯线程只在环形缓冲区中登记一行已拼好的输出及其时间戳,由单独的输出线程批量格式化并写出。
+ * 时间戳在登记时取得,且与占用缓冲区槽位在同一把锁内完成,
+ * 因此输出的顺序与时间戳和同步打印完全一致,只是格式化和IO不再占用电梯线程。
+ * 缓冲区满时登记方等待输出线程腾出槽位。
+ * 由{@link #start(PrintStream, Clock, int)}创建,对象构造完成后才启动输出线程
+ */
+public final class AsyncOutput implements Runnable {
+    private static final String NEWLINE = System.lineSeparator();
+    private final PrintStream out;
+    private final Clock clock;
+    // 输出时间戳的零点,单位ms
+    private final long origin;
+    private final long[] timestamps;
+    private final String[] messages;
+    private final int mask;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    // 下一个待写出的序号,只在持有lock时修改
+    private long head;
+    // 下一个待登记的序号,只在持有lock时修改
+    private long tail;
+    private boolean closed;
+    private final Thread thread;
+
+    private AsyncOutput(PrintStream out, Clock clock, int capacity) {
+        this.out = out;
+        this.clock = clock;
+        this.origin = clock.origin();
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.timestamps = new long[size];
+        this.messages = new String[size];
+        this.mask = size - 1;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        // 输出线程不受时钟管理,不会影响虚拟时间的推进
+        this.thread = new Thread(this, "output");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * 创建异步输出并启动输出线程
+     *
+     * @param out      输出目标
+     * @param clock    提供时间戳的时钟
+     * @param capacity 缓冲区容量,会向上取整为2的幂
+     * @return 已开始工作的异步输出
+     */
+    public static AsyncOutput start(PrintStream out, Clock clock, int capacity) {
+        AsyncOutput output = new AsyncOutput(out, clock, capacity);
+        output.thread.start();
+        return output;
+    }
+
+    /**
+     * 登记一行输出,时间戳取登记时刻
+     *
+     * @param message 输出内容
+     * @return 输出的时间戳
+     */
+    public long println(String message) {
+        lock.lock();
+        try {
+            while (tail - head == messages.length) {
+                notFull.awaitUninterruptibly();
+            }
+            long timestamp = clock.currentTimeMillis();
+            int slot = (int) (tail & mask);
+            timestamps[slot] = timestamp;
+            messages[slot] = message;
+            if (tail++ == head) {
+                notEmpty.signal();
+            }
+            return timestamp;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写出所有已登记的输出后结束输出线程
+     *
+     * @throws InterruptedException 等待被中断
+     */
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            long from;
+            long to;
+            lock.lock();
+            try {
+                while (head == tail && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (head == tail) {
+                    return;
+                }
+                from = head;
+                to = tail;
+            } finally {
+                lock.unlock();
+            }
+            // [from, to)中的槽位在head前移之前不会被登记方改写,可以不持锁读取
+            batch.setLength(0);
+            for (long i = from; i < to; i++) {
+                int slot = (int) (i & mask);
+                appendLine(batch, timestamps[slot] - origin, messages[slot]);
+                messages[slot] = null;
+            }
+            out.append(batch);
+            out.flush();
+            lock.lock();
+            try {
+                head = to;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按"[%9.4f]%s"的格式追加一行,时间戳为整毫秒,因此不必经过浮点格式化
+     */
+    static void appendLine(StringBuilder batch, long millis, String message) {
+        if (millis < 0) {
+            batch.append(String.format("[%9.4f]%s", millis / 1000.0, message)).append(NEWLINE);
+            return;
+        }
+        long seconds = millis / 1000;
+        int fraction = (int) (millis % 1000);
+        batch.append('[');
+        // 整数部分、小数点和4位小数共占9个字符,不足时左侧补空格
+        for (int width = stringSize(seconds) + 5; width < 9; width++) {
+            batch.append(' ');
+        }
+        batch.append(seconds).append('.');
+        if (fraction < 100) {
+            batch.append('0');
+        }
+        if (fraction < 10) {
+            batch.append('0');
+        }
+        batch.append(fraction).append('0').append(']').append(message).append(NEWLINE);
+    }
+
+    private static int stringSize(long value) {
+        int size = 1;
+        while (value >= 10) {
+            value /= 10;
+            size++;
+        }
+        return size;
+    }
+}
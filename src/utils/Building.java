@@ -0,0 +1,245 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 建筑模型:楼层范围以及每部电梯的速度、载客量、开关门时间和停靠楼层
+ * 默认与评测要求一致,即B4到F7共11层、6部电梯,每部移动一层400ms、限乘6人、开关门间隔400ms。
+ * 通过 -Delevator.building=配置文件路径 可以改为其他建筑,配置文件为properties格式,例如:
+ * <pre>
+ * # 楼层范围,最多64层
+ * floors=B2-F58
+ * elevators=8
+ * # 所有电梯的默认参数
+ * moveTime=400
+ * capacity=8
+ * doorTime=400
+ * initFloor=F1
+ * # 1、2号为快梯,只停靠大堂和高区
+ * elevator.1.moveTime=150
+ * elevator.1.floors=F1,F40-F58
+ * elevator.2.moveTime=150
+ * elevator.2.floors=F1,F40-F58
+ * </pre>
+ * 每部电梯的初始楼层必须是它停靠的楼层
+ * 注意评测库的输入解析只接受1到6号电梯和B4到F7的楼层,更大的建筑需要通过其他输入途径提交请求
+ */
+public class Building {
+    // 楼层下标用long位图表示,因此楼层数不能超过64
+    private static final int MAX_FLOORS = 64;
+    private final int minFloor;
+    private final int maxFloor;
+    private final List<ElevatorSpec> elevators;
+    // 预先生成的楼层字符串表,下标由floor2Index给出
+    private final String[] labels;
+
+    private Building(int minFloor, int maxFloor, List<ElevatorSpec> elevators) {
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.elevators = Collections.unmodifiableList(elevators);
+        this.labels = new String[getNumFloors()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = FloorConverter.floorInt2String(FloorConverter.index2Floor(i, minFloor));
+        }
+    }
+
+    /**
+     * 获取当前模拟的建筑
+     *
+     * @return 建筑实例
+     */
+    public static Building getInstance() {
+        return SimulationContext.current().getBuilding();
+    }
+
+    /**
+     * 按-Delevator.building指定的配置文件加载建筑,未指定时为评测要求的建筑
+     *
+     * @return 建筑
+     */
+    static Building load() {
+        Properties properties = new Properties();
+        String path = System.getProperty("elevator.building");
+        if (path != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(path))) {
+                properties.load(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return parse(properties);
+    }
+
+    /**
+     * 由配置项构造建筑,缺省的配置项取评测要求的数值
+     *
+     * @param properties 配置项
+     * @return 建筑
+     * @throws IllegalArgumentException 如果配置不合法
+     */
+    public static Building parse(Properties properties) {
+        String[] range = properties.getProperty("floors", "B4-F7").trim().split("-");
+        if (range.length != 2) {
+            throw new IllegalArgumentException("Bad floor range");
+        }
+        int minFloor = FloorConverter.floorString2Int(range[0].trim());
+        int maxFloor = FloorConverter.floorString2Int(range[1].trim());
+        int numFloors = FloorConverter.calFloorDistance(minFloor, maxFloor) + 1;
+        if (minFloor > maxFloor || minFloor == 0 || maxFloor == 0 || numFloors > MAX_FLOORS) {
+            throw new IllegalArgumentException("Bad floor range");
+        }
+        int count = Integer.parseInt(properties.getProperty("elevators", "6").trim());
+        List<ElevatorSpec> elevators = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            int moveTime = intOf(properties, id, "moveTime", 400);
+            int capacity = intOf(properties, id, "capacity", 6);
+            int doorTime = intOf(properties, id, "doorTime", 400);
+            int initFloor = FloorConverter.floorString2Int(stringOf(properties, id, "initFloor", "F1"));
+            long stopMask = 0;
+            for (String part : stringOf(properties, id, "floors", range[0] + "-" + range[1]).split(",")) {
+                String[] bounds = part.trim().split("-");
+                int low = FloorConverter.floorString2Int(bounds[0].trim());
+                int high = FloorConverter.floorString2Int(bounds[bounds.length - 1].trim());
+                if (low < minFloor || high > maxFloor || low > high) {
+                    throw new IllegalArgumentException("Bad floors of elevator " + id);
+                }
+                for (int i = FloorConverter.floor2Index(low, minFloor);
+                     i <= FloorConverter.floor2Index(high, minFloor); i++) {
+                    stopMask |= 1L << i;
+                }
+            }
+            if (moveTime <= 0 || capacity <= 0 || doorTime < 0
+                    || initFloor < minFloor || initFloor > maxFloor || initFloor == 0) {
+                throw new IllegalArgumentException("Bad spec of elevator " + id);
+            }
+            // 初始楼层不在停靠范围内时,电梯离开后再也无法回到该层,也无法在该层开门
+            if ((stopMask & (1L << FloorConverter.floor2Index(initFloor, minFloor))) == 0) {
+                throw new IllegalArgumentException("Initial floor of elevator " + id
+                        + " is not one of its stops");
+            }
+            elevators.add(new ElevatorSpec(id, moveTime, capacity, doorTime, initFloor,
+                    minFloor, stopMask));
+        }
+        return new Building(minFloor, maxFloor, elevators);
+    }
+
+    private static String stringOf(Properties properties, int id, String key, String defaultValue) {
+        String value = properties.getProperty("elevator." + id + "." + key);
+        if (value == null) {
+            value = properties.getProperty(key, defaultValue);
+        }
+        return value.trim();
+    }
+
+    private static int intOf(Properties properties, int id, String key, int defaultValue) {
+        return Integer.parseInt(stringOf(properties, id, key, String.valueOf(defaultValue)));
+    }
+
+    public int getMinFloor() {
+        return minFloor;
+    }
+
+    public int getMaxFloor() {
+        return maxFloor;
+    }
+
+    public int getNumFloors() {
+        return FloorConverter.calFloorDistance(minFloor, maxFloor) + 1;
+    }
+
+    /**
+     * @param index 楼层下标
+     * @return 该楼层的字符串形式,例如 "F2", "B1"
+     */
+    public String getLabel(int index) {
+        return labels[index];
+    }
+
+    /**
+     * @return 按楼层下标排列的楼层字符串,供调用方在构造时缓存
+     */
+    public String[] getLabels() {
+        return labels.clone();
+    }
+
+    /**
+     * @return 按ID排列的电梯参数,第i个元素对应ID为i+1的电梯
+     */
+    public List<ElevatorSpec> getElevators() {
+        return elevators;
+    }
+
+    /**
+     * 单部电梯的参数
+     */
+    public static final class ElevatorSpec {
+        private final int id;
+        // 移动一层所需时间,单位ms
+        private final int moveTime;
+        // 限制乘坐人数
+        private final int capacity;
+        // 开门到关门之间的间隔,单位ms
+        private final int doorTime;
+        // 初始位置
+        private final int initFloor;
+        private final int minFloor;
+        // 第i位为1表示在下标为i的楼层停靠,快梯会跳过中间的楼层
+        private final long stopMask;
+
+        private ElevatorSpec(int id, int moveTime, int capacity, int doorTime, int initFloor,
+                             int minFloor, long stopMask) {
+            this.id = id;
+            this.moveTime = moveTime;
+            this.capacity = capacity;
+            this.doorTime = doorTime;
+            this.initFloor = initFloor;
+            this.minFloor = minFloor;
+            this.stopMask = stopMask;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getMoveTime() {
+            return moveTime;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getDoorTime() {
+            return doorTime;
+        }
+
+        public int getInitFloor() {
+            return initFloor;
+        }
+
+        public long getStopMask() {
+            return stopMask;
+        }
+
+        /**
+         * 判断电梯是否在指定楼层停靠
+         *
+         * @param floor 楼层整型形式
+         * @return true表示停靠
+         */
+        public boolean stopsAt(int floor) {
+            if (floor == 0) {
+                return false;
+            }
+            int index = FloorConverter.floor2Index(floor, minFloor);
+            return index >= 0 && index < MAX_FLOORS && (stopMask & (1L << index)) != 0;
+        }
+    }
+}
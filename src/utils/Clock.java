@@ -0,0 +1,294 @@
+package utils;
+
+import java.io.InputStream;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 模拟所使用的时钟
+ * 电梯、调度器和输入线程的所有计时、休眠、空闲等待以及带时间戳的输出都经由时钟完成,
+ * 从而可以在真实时间({@link RealClock})与虚拟时间({@link VirtualClock})之间切换
+ */
+public abstract class Clock {
+    // 创建受管理线程的方式,默认每个任务一个平台线程
+    private volatile ThreadFactory threadFactory = Thread::new;
+    // 尚未结束的受管理线程数
+    private final ReentrantLock aliveLock = new ReentrantLock();
+    private final Condition allFinished = aliveLock.newCondition();
+    private int alive;
+    // 异步输出,为null时由时钟直接打印
+    private volatile AsyncOutput output;
+    // 二进制事件日志,为null时不记录
+    private volatile EventLog eventLog;
+
+    /**
+     * 获取当前模拟使用的时钟
+     *
+     * @return 时钟实例
+     */
+    public static Clock getInstance() {
+        return SimulationContext.current().getClock();
+    }
+
+    /**
+     * 替换当前模拟使用的时钟,须在启动任何模拟线程之前调用
+     *
+     * @param clock 新的时钟
+     */
+    public static void setInstance(Clock clock) {
+        SimulationContext.current().setClock(clock);
+    }
+
+    /**
+     * 设置创建受管理线程的方式,例如使用虚拟线程
+     *
+     * @param threadFactory 线程工厂
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * 创建虚拟线程的工厂,线程依次命名为prefix0、prefix1……
+     * 虚拟线程需要JDK 21,这里通过反射取得Thread.ofVirtual(),使代码仍能在更早的JDK上编译运行;
+     * 不支持时退回为每个任务一个平台线程
+     *
+     * @param prefix 线程名前缀
+     * @return 线程工厂
+     */
+    public static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> type = Class.forName("java.lang.Thread$Builder");
+            builder = type.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) type.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return Thread::new;
+        }
+    }
+
+    /**
+     * 启动一个受该时钟管理的线程
+     *
+     * @param task 线程任务
+     */
+    public void start(Runnable task) {
+        aliveLock.lock();
+        try {
+            alive++;
+        } finally {
+            aliveLock.unlock();
+        }
+        onStart();
+        threadFactory.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                onExit();
+                aliveLock.lock();
+                try {
+                    alive--;
+                    allFinished.signalAll();
+                } finally {
+                    aliveLock.unlock();
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * 等待所有受管理的线程结束;虚拟线程是守护线程,主线程须借此等待模拟完成
+     *
+     * @throws InterruptedException 等待被中断
+     */
+    public void awaitTermination() throws InterruptedException {
+        aliveLock.lock();
+        try {
+            while (alive > 0) {
+                allFinished.await();
+            }
+        } finally {
+            aliveLock.unlock();
+        }
+    }
+
+    /**
+     * 暂停虚拟时间的推进,直到对应的{@link #release()}
+     * 用于在未受管理的线程中依次启动多个线程:否则先启动的线程休眠后,
+     * 时钟可能在后启动的线程登记唤醒事件之前就推进到后面的时刻。真实时间下不起作用
+     */
+    public void hold() {
+        onStart();
+    }
+
+    /**
+     * 恢复由{@link #hold()}暂停的时间推进,须在调用hold的线程中调用
+     */
+    public void release() {
+        onExit();
+    }
+
+    /**
+     * 指定当前线程下一次休眠所登记的唤醒事件在同一时刻的事件中的顺序,真实时间下不起作用
+     * 用于从快照恢复原来的事件顺序
+     *
+     * @param order 登记顺序,越小越先唤醒
+     */
+    public void setNextOrder(long order) {
+    }
+
+    /**
+     * 受管理线程启动前在启动方线程中调用
+     */
+    protected void onStart() {
+    }
+
+    /**
+     * 受管理线程结束前在该线程中调用
+     */
+    protected void onExit() {
+    }
+
+    /**
+     * @return 当前时间,单位ms
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * @return 输出时间戳的零点,单位ms,默认为时钟的0时刻
+     */
+    public long origin() {
+        return 0;
+    }
+
+    /**
+     * 单调递增的高精度时间,只用于计算截止时刻,不受系统时间调整的影响
+     * 默认由{@link #currentTimeMillis()}换算
+     *
+     * @return 当前时间,单位ns
+     */
+    public long nanoTime() {
+        return currentTimeMillis() * 1_000_000;
+    }
+
+    /**
+     * 把{@link #currentTimeMillis()}给出的毫秒时刻换算到{@link #nanoTime()}的时间轴上
+     *
+     * @param millis 毫秒时刻,例如输出的时间戳
+     * @return 该毫秒开始的时刻,单位ns
+     */
+    public long toNanos(long millis) {
+        return millis * 1_000_000;
+    }
+
+    /**
+     * 使当前线程休眠到{@link #nanoTime()}不早于截止时刻为止,截止时刻已过时立即返回
+     * 默认按毫秒调用{@link #sleep(long)},醒得过早时继续休眠
+     *
+     * @param deadline 截止时刻,单位ns
+     * @throws InterruptedException 休眠被中断
+     */
+    public void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - nanoTime()) > 0) {
+            sleep((remaining + 999_999) / 1_000_000);
+        }
+    }
+
+    /**
+     * 使当前线程休眠指定的时长
+     *
+     * @param millis 休眠时长,单位ms
+     * @throws InterruptedException 休眠被中断
+     */
+    public abstract void sleep(long millis) throws InterruptedException;
+
+    /**
+     * 使当前线程空闲等待,直到被{@link #unpark(Thread)}唤醒
+     * 与LockSupport.park相同,若此前已被unpark过则立即返回,调用方须在循环中重新检查条件
+     *
+     * @throws InterruptedException 等待被中断
+     */
+    public abstract void park() throws InterruptedException;
+
+    /**
+     * 唤醒空闲等待的线程;若该线程尚未进入等待,则它的下一次park会立即返回
+     *
+     * @param thread 要唤醒的线程,为null时忽略
+     */
+    public abstract void unpark(Thread thread);
+
+    /**
+     * 设置异步输出,此后的输出只登记到缓冲区,由输出线程写出
+     *
+     * @param output 异步输出,为null时恢复同步打印
+     */
+    public void setOutput(AsyncOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * 设置二进制事件日志,须在启动任何模拟线程之前调用
+     *
+     * @param eventLog 事件日志,为null时不记录
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * 输出一行带当前时间戳的信息
+     *
+     * @param message 输出内容
+     * @return 输出时的时间戳
+     */
+    public long println(String message) {
+        AsyncOutput async = output;
+        return async == null ? printSync(message) : async.println(message);
+    }
+
+    /**
+     * 输出一行带当前时间戳的信息,并在事件日志中记录对应的事件
+     * 取时间戳、打印和记录在日志的锁内完成,日志中事件的顺序与文本输出的顺序相同
+     *
+     * @param message 输出内容
+     * @param event   {@link EventLog#event}打包的事件
+     * @return 输出时的时间戳
+     */
+    public long println(String message, long event) {
+        EventLog log = eventLog;
+        if (log == null) {
+            return println(message);
+        }
+        ReentrantLock lock = log.getLock();
+        lock.lock();
+        try {
+            long stamp = println(message);
+            log.record(stamp, event);
+            return stamp;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在当前线程中立即打印一行带当前时间戳的信息
+     *
+     * @param message 输出内容
+     * @return 输出时的时间戳
+     */
+    protected abstract long printSync(String message);
+
+    /**
+     * 包装输入流,使请求按照该时钟的时间到达
+     *
+     * @param in 原始输入流
+     * @return 供ElevatorInput读取的输入流
+     */
+    public abstract InputStream wrapInput(InputStream in);
+}
@@ -0,0 +1,68 @@
+package utils;
+
+/**
+ * 按绝对截止时刻安排电梯的耗时操作
+ * 每个操作的截止时刻为上一个截止时刻加上操作的标准耗时,在{@link Clock#nanoTime()}的时间轴上计算,
+ * 醒来的延迟不会计入下一个操作,因此长时间运行也不会累积误差。
+ * <p>
+ * 唯一的例外是输出:评测以输出的时间戳检查间隔,若某行输出的时间戳晚于当前截止时刻,
+ * 后续操作须以该时间戳为起点,否则间隔可能短于标准耗时。顺延的时长由{@link #mark(long)}返回。
+ * 只由所属电梯线程访问
+ */
+public class DeadlineTimer {
+    // 上一个操作的截止时刻,单位ns
+    private long deadline;
+
+    /**
+     * 以当前时刻为起点重新计时,用于空闲等待结束之后
+     */
+    public void reset() {
+        deadline = Clock.getInstance().nanoTime();
+    }
+
+    /**
+     * 登记一行输出的时间戳,之后的操作不早于该时间戳加上标准耗时结束
+     *
+     * @param stamp 输出的时间戳,单位ms
+     * @return 截止时刻因此顺延的时长,单位ns
+     */
+    public long mark(long stamp) {
+        long start = Clock.getInstance().toNanos(stamp);
+        if (start <= deadline) {
+            return 0;
+        }
+        long delay = start - deadline;
+        deadline = start;
+        return delay;
+    }
+
+    /**
+     * 休眠到上一个截止时刻加上duration为止
+     *
+     * @param duration 操作的标准耗时,单位ms
+     * @return 实际醒来的时刻晚于截止时刻的时长,单位ns
+     * @throws InterruptedException 休眠被中断
+     */
+    public long await(long duration) throws InterruptedException {
+        Clock clock = Clock.getInstance();
+        deadline += duration * 1_000_000;
+        clock.sleepUntil(deadline);
+        return clock.nanoTime() - deadline;
+    }
+
+    /**
+     * @return 上一个操作的截止时刻,单位ns
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * 从快照恢复上一个操作的截止时刻
+     *
+     * @param deadline 截止时刻,单位ns
+     */
+    public void restore(long deadline) {
+        this.deadline = deadline;
+    }
+}
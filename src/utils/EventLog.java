@@ -0,0 +1,131 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 二进制事件日志,与文本输出并行记录ARRIVE/OPEN/CLOSE/IN/OUT事件
+ * 文件以16字节的文件头开始:魔数"ELOG"、格式版本、最低楼层和楼层数;
+ * 之后每个事件占{@link #RECORD_SIZE}字节,均为大端序:
+ * <pre>
+ * 0  long  时间戳,单位ns,以输出时间戳的零点为起点,与文本输出的时间戳一致
+ * 8  byte  事件类型,见{@link #ARRIVE}等常量
+ * 9  byte  楼层下标,最低楼层为0
+ * 10 short 电梯ID
+ * 12 int   乘客ID,与乘客无关的事件为-1
+ * </pre>
+ * 记录先写入直接缓冲区,写满后经FileChannel写出。分析时用{@link EventLogReader}映射到内存读取,
+ * 不必再解析文本;需要评测格式时由它还原为文本输出
+ */
+public final class EventLog implements Closeable {
+    public static final int ARRIVE = 0;
+    public static final int OPEN = 1;
+    public static final int CLOSE = 2;
+    public static final int IN = 3;
+    public static final int OUT = 4;
+    static final int MAGIC = 0x454C4F47;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    // 输出时间戳的零点,单位ms
+    private final long origin;
+    // 保护缓冲区和文件;不用监视器,持锁写文件或等待输出时不会占住虚拟线程的载体线程
+    private final ReentrantLock lock;
+
+    /**
+     * 创建日志文件,已存在时覆盖
+     *
+     * @param path     文件路径
+     * @param clock    提供输出时间戳零点的时钟
+     * @param building 建筑,其楼层范围写入文件头
+     * @throws IOException 创建失败
+     */
+    public EventLog(Path path, Clock clock, Building building) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(RECORD_SIZE << 12);
+        origin = clock.origin();
+        lock = new ReentrantLock();
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putInt(building.getMinFloor()).putInt(building.getNumFloors());
+    }
+
+    /**
+     * 把事件的各字段打包为一个long,字节顺序与记录中的8至15字节相同
+     *
+     * @param type       事件类型
+     * @param elevator   电梯ID
+     * @param floorIndex 楼层下标
+     * @param passenger  乘客ID,与乘客无关时为-1
+     * @return 打包后的事件
+     */
+    public static long event(int type, int elevator, int floorIndex, int passenger) {
+        return (long) type << 56 | (long) (floorIndex & 0xff) << 48
+                | (long) (elevator & 0xffff) << 32 | passenger & 0xffffffffL;
+    }
+
+    /**
+     * 追加一条事件记录
+     * 调用方须保证记录的顺序与对应文本输出的顺序相同,见{@link Clock#println(String, long)}
+     *
+     * @param stamp 对应文本输出的时间戳,单位ms
+     * @param event {@link #event}打包的事件
+     */
+    public void record(long stamp, long event) {
+        lock.lock();
+        try {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.putLong((stamp - origin) * 1_000_000).putLong(event);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写出缓冲区中的记录并关闭文件
+     *
+     * @throws IOException 写出失败
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return 日志的锁,持有它时可以把取时间戳、打印和记录合为一步,见{@link Clock#println(String, long)}
+     */
+    ReentrantLock getLock() {
+        return lock;
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // 日志只用于事后分析,写出失败不影响模拟本身
+            e.printStackTrace();
+        }
+        buffer.clear();
+    }
+}
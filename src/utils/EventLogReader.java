@@ -0,0 +1,250 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 把{@link EventLog}写出的事件日志映射到内存读取
+ * 记录定长,第i条事件的各字段可以直接按下标读取,不做任何解析;按电梯和按乘客的索引在第一次使用时
+ * 各扫描一遍日志建立。文件按{@link #SEGMENT}字节分段映射,大于2GB的日志也可以读取,
+ * 事件数不超过Integer.MAX_VALUE。
+ * {@link #writeText(Writer)}把日志还原为与评测格式相同的文本输出
+ */
+public final class EventLogReader implements Closeable {
+    // 每段映射的字节数,是记录长度的整数倍
+    private static final int SEGMENT = 1 << 30;
+    private static final int PER_SEGMENT = SEGMENT / EventLog.RECORD_SIZE;
+    private static final String[] TYPES = {"ARRIVE", "OPEN", "CLOSE", "IN", "OUT"};
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int size;
+    private final int minFloor;
+    // 楼层下标对应的楼层字符串
+    private final String[] labels;
+    // 按电梯ID排列的事件下标,下标0不用
+    private int[][] byElevator;
+    // 乘客事件按(乘客ID, 事件下标)排序,每项为乘客ID<<32|事件下标
+    private long[] byPassenger;
+
+    /**
+     * @param path 日志文件
+     * @throws IOException 读取失败或不是事件日志
+     */
+    public EventLogReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long length = channel.size() - EventLog.HEADER_SIZE;
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                Math.min(channel.size(), EventLog.HEADER_SIZE));
+        if (length < 0 || header.getInt() != EventLog.MAGIC
+                || header.getInt() != EventLog.VERSION) {
+            channel.close();
+            throw new IOException("Not an event log");
+        }
+        minFloor = header.getInt();
+        labels = new String[header.getInt()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = FloorConverter.floorInt2String(FloorConverter.index2Floor(i, minFloor));
+        }
+        long records = length / EventLog.RECORD_SIZE;
+        if (records > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Event log too large");
+        }
+        size = (int) records;
+        segments = new MappedByteBuffer[(size + PER_SEGMENT - 1) / PER_SEGMENT];
+        for (int i = 0; i < segments.length; i++) {
+            long offset = EventLog.HEADER_SIZE + (long) i * SEGMENT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min((long) SEGMENT, (long) size * EventLog.RECORD_SIZE
+                            - (long) i * SEGMENT));
+        }
+    }
+
+    /**
+     * @return 事件数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i 事件下标
+     * @return 事件的时间戳,单位ns
+     */
+    public long time(int i) {
+        return segments[i / PER_SEGMENT].getLong(offset(i));
+    }
+
+    /**
+     * @param i 事件下标
+     * @return 事件类型,见{@link EventLog#ARRIVE}等常量
+     */
+    public int type(int i) {
+        return segments[i / PER_SEGMENT].get(offset(i) + 8);
+    }
+
+    /**
+     * @param i 事件下标
+     * @return 楼层下标,最低楼层为0
+     */
+    public int floorIndex(int i) {
+        return segments[i / PER_SEGMENT].get(offset(i) + 9) & 0xff;
+    }
+
+    /**
+     * @param i 事件下标
+     * @return 楼层整数形式
+     */
+    public int floor(int i) {
+        return FloorConverter.index2Floor(floorIndex(i), minFloor);
+    }
+
+    /**
+     * @param i 事件下标
+     * @return 电梯ID
+     */
+    public int elevator(int i) {
+        return segments[i / PER_SEGMENT].getShort(offset(i) + 10) & 0xffff;
+    }
+
+    /**
+     * @param i 事件下标
+     * @return 乘客ID,与乘客无关的事件为-1
+     */
+    public int passenger(int i) {
+        return segments[i / PER_SEGMENT].getInt(offset(i) + 12);
+    }
+
+    /**
+     * 某部电梯的全部事件,按发生顺序排列
+     *
+     * @param id 电梯ID
+     * @return 事件下标,调用方不得修改
+     */
+    public int[] byElevator(int id) {
+        int[][] index = elevatorIndex();
+        return id > 0 && id < index.length ? index[id] : new int[0];
+    }
+
+    /**
+     * 某位乘客的全部事件,按发生顺序排列
+     *
+     * @param id 乘客ID
+     * @return 事件下标
+     */
+    public int[] byPassenger(int id) {
+        long[] index = passengerIndex();
+        // 第一个不小于id<<32的位置
+        long key = (long) id << 32;
+        int from = 0;
+        int high = index.length;
+        while (from < high) {
+            int middle = (from + high) >>> 1;
+            if (index[middle] < key) {
+                from = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int to = from;
+        while (to < index.length && (int) (index[to] >>> 32) == id) {
+            to++;
+        }
+        int[] result = new int[to - from];
+        for (int i = from; i < to; i++) {
+            result[i - from] = (int) index[i];
+        }
+        return result;
+    }
+
+    /**
+     * 事件对应的一行文本输出,不含时间戳,例如"IN-12-F3-2"
+     *
+     * @param i 事件下标
+     * @return 输出内容
+     */
+    public String message(int i) {
+        String label = labels[floorIndex(i)];
+        int type = type(i);
+        if (type == EventLog.IN || type == EventLog.OUT) {
+            return TYPES[type] + "-" + passenger(i) + "-" + label + "-" + elevator(i);
+        }
+        return TYPES[type] + "-" + label + "-" + elevator(i);
+    }
+
+    /**
+     * 按"[%9.4f]%s"的评测格式写出全部事件,与运行时的文本输出相同
+     *
+     * @param out 输出目标,由调用方负责缓冲和关闭
+     * @throws IOException 写出失败
+     */
+    public void writeText(Writer out) throws IOException {
+        StringBuilder batch = new StringBuilder(1 << 16);
+        for (int i = 0; i < size; i++) {
+            AsyncOutput.appendLine(batch, time(i) / 1_000_000, message(i));
+            if (batch.length() > 1 << 15) {
+                out.append(batch);
+                batch.setLength(0);
+            }
+        }
+        out.append(batch);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int offset(int i) {
+        return (i % PER_SEGMENT) * EventLog.RECORD_SIZE;
+    }
+
+    private synchronized int[][] elevatorIndex() {
+        if (byElevator == null) {
+            // 第一遍统计各电梯的事件数,第二遍填入下标
+            int[] counts = new int[2];
+            for (int i = 0; i < size; i++) {
+                int id = elevator(i);
+                if (id >= counts.length) {
+                    counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+                }
+                counts[id]++;
+            }
+            int[][] index = new int[counts.length][];
+            for (int id = 0; id < counts.length; id++) {
+                index[id] = new int[counts[id]];
+                counts[id] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                int id = elevator(i);
+                index[id][counts[id]++] = i;
+            }
+            byElevator = index;
+        }
+        return byElevator;
+    }
+
+    private synchronized long[] passengerIndex() {
+        if (byPassenger == null) {
+            long[] index = new long[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int id = passenger(i);
+                if (id >= 0) {
+                    index[count++] = (long) id << 32 | i;
+                }
+            }
+            index = Arrays.copyOf(index, count);
+            Arrays.sort(index);
+            byPassenger = index;
+        }
+        return byPassenger;
+    }
+}
@@ -1,6 +1,17 @@
 package utils;
 
 public class FloorConverter {
+    /*
+     * 不带最低楼层参数的方法以当前模拟的建筑为准,见Building.getInstance()
+     */
+
+    /**
+     * @return 建筑的楼层总数,即楼层下标的上界
+     */
+    public static int numFloors() {
+        return Building.getInstance().getNumFloors();
+    }
+
     /**
      * 将楼层字符串转换为整数。
      *
@@ -31,6 +42,30 @@ public class FloorConverter {
         }
     }
 
+    /**
+     * 查表获取楼层字符串,不产生新的字符串对象
+     * 每次调用都要查找当前模拟的建筑,频繁输出的地方应使用缓存了楼层表的重载
+     *
+     * @param floor 楼层整型形式
+     * @return 楼层字符串,例如 "F2", "B1"
+     */
+    public static String floorLabel(int floor) {
+        Building building = Building.getInstance();
+        return building.getLabel(floor2Index(floor, building.getMinFloor()));
+    }
+
+    /**
+     * 在调用方缓存的楼层表中查找楼层字符串
+     *
+     * @param floor    楼层整型形式
+     * @param minFloor 最低楼层
+     * @param labels   {@link Building#getLabels()}返回的楼层表
+     * @return 楼层字符串,例如 "F2", "B1"
+     */
+    public static String floorLabel(int floor, int minFloor, String[] labels) {
+        return labels[floor2Index(floor, minFloor)];
+    }
+
     /**
      * 计算两个楼层整数形式之间的距离
      */
@@ -41,4 +76,49 @@ public class FloorConverter {
             return (x > y) ? (x - y - 1) : (y - x - 1);
         }
     }
+
+    /**
+     * 将楼层整数形式映射为从0开始的连续下标,最低楼层对应0
+     *
+     * @param floor 楼层整型形式
+     * @return 楼层下标
+     */
+    public static int floor2Index(int floor) {
+        return floor2Index(floor, Building.getInstance().getMinFloor());
+    }
+
+    /**
+     * 将楼层下标还原为楼层整数形式
+     *
+     * @param index 楼层下标
+     * @return 楼层整型形式
+     */
+    public static int index2Floor(int index) {
+        return index2Floor(index, Building.getInstance().getMinFloor());
+    }
+
+    /**
+     * 以指定的最低楼层为0号下标,将楼层整数形式映射为连续下标
+     *
+     * @param floor    楼层整型形式
+     * @param minFloor 最低楼层
+     * @return 楼层下标
+     */
+    public static int floor2Index(int floor, int minFloor) {
+        int index = floor - minFloor;
+        // 跨过不存在的第0层
+        return floor > 0 && minFloor < 0 ? index - 1 : index;
+    }
+
+    /**
+     * 以指定的最低楼层为0号下标,将楼层下标还原为楼层整数形式
+     *
+     * @param index    楼层下标
+     * @param minFloor 最低楼层
+     * @return 楼层整型形式
+     */
+    public static int index2Floor(int index, int minFloor) {
+        int floor = index + minFloor;
+        return floor >= 0 && minFloor < 0 ? floor + 1 : floor;
+    }
 }
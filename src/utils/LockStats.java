@@ -0,0 +1,79 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 监视器的争用统计:每次持锁的等待获取时长与持有时长
+ * 持有时长另按2的幂分桶计数,用于给出不受冷启动影响的分位数
+ */
+public class LockStats {
+    private static final int BUCKETS = 64;
+    // 第i个桶统计持有时长在[2^(i-1), 2^i)ns内的次数
+    private final AtomicLongArray holdHistogram = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalHold = new LongAdder();
+    private final AtomicLong maxHold = new AtomicLong();
+    private final LongAdder totalWait = new LongAdder();
+    private final AtomicLong maxWait = new AtomicLong();
+
+    /**
+     * 记录一次持锁
+     *
+     * @param waitNanos 从请求锁到获得锁的时长,单位ns
+     * @param holdNanos 持有锁的时长,单位ns
+     */
+    public void record(long waitNanos, long holdNanos) {
+        count.increment();
+        totalWait.add(waitNanos);
+        totalHold.add(holdNanos);
+        maxWait.accumulateAndGet(waitNanos, Math::max);
+        maxHold.accumulateAndGet(holdNanos, Math::max);
+        holdHistogram.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(holdNanos, 0)));
+    }
+
+    /**
+     * 估计持有时长的分位数,结果为所在桶的上界
+     *
+     * @param quantile 分位,例如0.99
+     * @return 持有时长,单位ns,不超过观察到的最大值
+     */
+    public long holdQuantileNanos(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += holdHistogram.get(i);
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += holdHistogram.get(i);
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : Math.min(1L << i, maxHold.get());
+            }
+        }
+        return 0;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxHoldNanos() {
+        return maxHold.get();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWait.get();
+    }
+
+    @Override
+    public String toString() {
+        long n = Math.max(count.sum(), 1);
+        return String.format("n=%d hold(avg=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus)"
+                        + " wait(avg=%.1fus max=%.1fus)",
+                count.sum(), totalHold.sum() / 1000.0 / n, holdQuantileNanos(0.5) / 1000.0,
+                holdQuantileNanos(0.99) / 1000.0, maxHold.get() / 1000.0,
+                totalWait.sum() / 1000.0 / n, maxWait.get() / 1000.0);
+    }
+}
@@ -0,0 +1,144 @@
+package utils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * 运行指标的注册表,按名称登记计数器和直方图
+ * 计数器为分段累加的LongAdder,直方图见{@link Histogram},多个线程同时记录时几乎不会争用。
+ * 按名称查找只在初始化时进行,热路径上的调用方应把取得的计数器和直方图保存在字段中。
+ * 快照按名称排序输出,每行一个指标,可以在结束时写入文件,也可以由后台线程定时追加
+ */
+public class Metrics {
+    private final Map<String, LongAdder> counters;
+    private final Map<String, Histogram> histograms;
+    private Thread reporter;
+
+    /**
+     * 创建一个不属于任何模拟的注册表,例如用于汇总多次模拟的指标;
+     * 模拟自己的指标由{@link #getInstance()}取得
+     */
+    public Metrics() {
+        counters = new ConcurrentSkipListMap<>();
+        histograms = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * @return 当前模拟的运行指标
+     */
+    public static Metrics getInstance() {
+        return SimulationContext.current().getMetrics();
+    }
+
+    /**
+     * @param name 指标名称,例如"elevator.1.doorCycles"
+     * @return 该名称的计数器,不存在时创建
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * @param name 指标名称,例如"elevator.1.waitMs"
+     * @return 该名称的直方图,不存在时创建
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * 把另一个注册表中的指标累加到本注册表,名称相同的计数器相加、直方图合并
+     *
+     * @param other  另一个注册表,合并期间不应再有记录
+     * @param rename 把other中的指标名称映射为本注册表中的名称,返回null时跳过该指标
+     */
+    public void addAll(Metrics other, UnaryOperator<String> rename) {
+        for (Map.Entry<String, LongAdder> entry : other.counters.entrySet()) {
+            String name = rename.apply(entry.getKey());
+            if (name != null) {
+                counter(name).add(entry.getValue().sum());
+            }
+        }
+        for (Map.Entry<String, Histogram> entry : other.histograms.entrySet()) {
+            String name = rename.apply(entry.getKey());
+            if (name != null) {
+                histogram(name).add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 输出所有指标的当前值
+     *
+     * @param out   输出目标
+     * @param title 快照的标题行,例如时间
+     */
+    public void dump(PrintStream out, String title) {
+        out.println("# " + title);
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            out.println(entry.getKey() + " " + entry.getValue().sum());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            out.println(entry.getKey() + " " + entry.getValue());
+        }
+        out.flush();
+    }
+
+    /**
+     * 把所有指标的当前值追加到文件
+     *
+     * @param path  文件路径
+     * @param title 快照的标题行
+     */
+    public void dump(String path, String title) {
+        try (PrintStream out = new PrintStream(new FileOutputStream(path, true),
+                false, StandardCharsets.UTF_8.name())) {
+            dump(out, title);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 启动后台线程,每隔period毫秒(真实时间)把快照追加到文件
+     * 该线程不受时钟管理,不会影响虚拟时间的推进
+     *
+     * @param path   文件路径
+     * @param period 间隔,单位ms
+     */
+    public synchronized void startReporter(String path, long period) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = new Thread(() -> {
+            long start = System.nanoTime();
+            while (true) {
+                try {
+                    Thread.sleep(period);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                dump(path, String.format("metrics at %.3fs wall",
+                        (System.nanoTime() - start) / 1e9));
+            }
+        }, "metrics");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * 停止定时输出的后台线程
+     */
+    public synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.interrupt();
+            reporter = null;
+        }
+    }
+}
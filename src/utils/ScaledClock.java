@@ -0,0 +1,95 @@
+package utils;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按倍速运行的真实时间时钟,用于回放带时间戳的输入
+ * 模拟时间 = 自创建起流逝的真实时间 * 倍速,休眠时长相应缩短;
+ * 倍速为1时即按真实时间回放。输出的时间戳同样是模拟时间
+ */
+public class ScaledClock extends RealClock {
+    private final double speed;
+    private final long startNanos;
+    private final PrintStream out;
+    private final ReentrantLock outLock;
+
+    /**
+     * @param out   输出目标
+     * @param speed 倍速,须为正数
+     */
+    public ScaledClock(PrintStream out, double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Bad speed " + speed);
+        }
+        this.speed = speed;
+        this.startNanos = System.nanoTime();
+        this.out = out;
+        this.outLock = new ReentrantLock();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return (long) ((System.nanoTime() - startNanos) * speed / 1_000_000);
+    }
+
+    @Override
+    public long nanoTime() {
+        return (long) ((System.nanoTime() - startNanos) * speed);
+    }
+
+    @Override
+    public long toNanos(long millis) {
+        // 模拟时间的毫秒与纳秒同出一源,不需要RealClock的系统时间偏移
+        return millis * 1_000_000;
+    }
+
+    @Override
+    public long origin() {
+        return 0;
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        // 按模拟时间的截止时刻等待,醒得过早时继续休眠,保证模拟时间至少流逝millis
+        long deadline = currentTimeMillis() + millis;
+        long remaining = millis;
+        while (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep((long) Math.ceil(remaining * 1_000_000 / speed));
+            remaining = deadline - currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - nanoTime()) > 0) {
+            LockSupport.parkNanos(this, (long) Math.ceil(remaining / speed));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    protected long printSync(String message) {
+        outLock.lock();
+        try {
+            // 在锁内取时间戳,保证输出的时间戳不会倒序
+            long timestamp = currentTimeMillis();
+            out.println(String.format("[%9.4f]%s", timestamp / 1000.0, message));
+            out.flush();
+            return timestamp;
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    @Override
+    public InputStream wrapInput(InputStream in) {
+        return new TimedInput(in, this, 0);
+    }
+}
@@ -0,0 +1,161 @@
+package utils;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 一次模拟的全部状态:建筑、时钟、运行指标、配置、输入,以及调度器等默认包中的组件
+ * 当前线程所属的模拟记录在可继承的ThreadLocal中,受时钟管理的线程创建时继承创建方的模拟,
+ * 因此各处的getInstance()都会取得本次模拟自己的对象,同一个JVM中可以同时运行多次互不相干的模拟。
+ * <p>
+ * 未进入任何模拟的线程使用进程级的默认模拟:建筑取自-Delevator.building,配置即系统属性,
+ * 输入为标准输入,时钟默认为真实时间,与单次运行时的行为完全一致
+ */
+public final class SimulationContext {
+    private static final InheritableThreadLocal<SimulationContext> CURRENT =
+            new InheritableThreadLocal<>();
+    private static final SimulationContext DEFAULT = new SimulationContext(null, null, null);
+    // 本次模拟的配置,为null时直接读取系统属性
+    private final Properties properties;
+    // 本次模拟的输入,为null时读取标准输入
+    private final InputStream input;
+    private final Metrics metrics;
+    // 默认包中的组件,例如调度器和输入线程,按类型登记
+    private final Map<Class<?>, Object> components;
+    private volatile Building building;
+    private volatile Clock clock;
+
+    /**
+     * @param building   建筑,为null时按-Delevator.building加载
+     * @param properties 配置,未设置的项取系统属性;为null时直接读取系统属性
+     * @param input      带时间戳的请求输入,为null时读取标准输入
+     */
+    public SimulationContext(Building building, Properties properties, InputStream input) {
+        this.building = building;
+        this.properties = properties;
+        this.input = input;
+        this.metrics = new Metrics();
+        this.components = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return 当前线程所属的模拟,未进入任何模拟时为默认模拟
+     */
+    public static SimulationContext current() {
+        SimulationContext context = CURRENT.get();
+        return context == null ? DEFAULT : context;
+    }
+
+    /**
+     * 在本次模拟中执行任务,任务中创建的线程同样属于本次模拟
+     *
+     * @param task 任务
+     */
+    public void run(Runnable task) {
+        SimulationContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            task.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public Building getBuilding() {
+        Building result = building;
+        if (result == null) {
+            synchronized (this) {
+                if (building == null) {
+                    building = Building.load();
+                }
+                result = building;
+            }
+        }
+        return result;
+    }
+
+    public Clock getClock() {
+        Clock result = clock;
+        if (result == null) {
+            synchronized (this) {
+                if (clock == null) {
+                    clock = new RealClock();
+                }
+                result = clock;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 替换本次模拟的时钟,须在启动任何模拟线程之前调用
+     *
+     * @param clock 新的时钟
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return 本次模拟的请求输入
+     */
+    public InputStream getInput() {
+        return input == null ? System.in : input;
+    }
+
+    /**
+     * 读取本次模拟的配置项,未设置时取同名的系统属性
+     *
+     * @param key 配置项名称,例如"elevator.dispatch"
+     * @return 配置值,不存在时返回null
+     */
+    public String getProperty(String key) {
+        String value = properties == null ? null : properties.getProperty(key);
+        return value == null ? System.getProperty(key) : value;
+    }
+
+    /**
+     * 读取整数配置项
+     *
+     * @param key          配置项名称
+     * @param defaultValue 配置项不存在时的默认值
+     * @return 配置值
+     */
+    public int getInteger(String key, int defaultValue) {
+        String value = getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * 取得本次模拟中指定类型的组件,第一次取得时创建
+     * 创建期间其他线程取同一组件会等待创建完成,创建过程本身不能再取得同一组件
+     *
+     * @param type    组件类型
+     * @param factory 创建组件的方法
+     * @return 组件
+     */
+    public <T> T component(Class<T> type, Supplier<? extends T> factory) {
+        Object value = components.get(type);
+        if (value == null) {
+            synchronized (components) {
+                value = components.get(type);
+                if (value == null) {
+                    value = factory.get();
+                    components.put(type, value);
+                }
+            }
+        }
+        return type.cast(value);
+    }
+}
@@ -0,0 +1,115 @@
+package utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 滑动时间窗口内的计数直方图
+ * 窗口被均分为若干个时间槽,每个槽记录各下标的计数,另维护整个窗口的合计;
+ * 时间前进时只清空过期的槽并从合计中减去,记录和查询都不必遍历整个窗口。
+ * 所有方法都持有该对象的监视器,可在多个线程中调用
+ */
+public class SlidingHistogram {
+    private final long slotMillis;
+    // slots[s][i]为第s个时间槽中下标i的计数
+    private final int[][] slots;
+    // 窗口内各下标的计数之和
+    private final int[] totals;
+    private int total;
+    // 最新时间槽的编号,即时刻/slotMillis
+    private long currentSlot;
+
+    /**
+     * @param size         下标的个数
+     * @param windowMillis 窗口长度,单位ms
+     * @param slotCount    窗口划分的时间槽数
+     */
+    public SlidingHistogram(int size, long windowMillis, int slotCount) {
+        this.slotMillis = Math.max(1, windowMillis / slotCount);
+        this.slots = new int[slotCount][size];
+        this.totals = new int[size];
+    }
+
+    /**
+     * 在指定时刻为下标index计数一次
+     *
+     * @param index 下标
+     * @param now   时刻,单位ms
+     */
+    public synchronized void record(int index, long now) {
+        advance(now);
+        slots[(int) (currentSlot % slots.length)][index]++;
+        totals[index]++;
+        total++;
+    }
+
+    /**
+     * 把窗口内各下标的计数复制到into中
+     *
+     * @param now  时刻,单位ms
+     * @param into 长度不小于下标个数的数组
+     * @return 窗口内的计数总和
+     */
+    public synchronized int snapshot(long now, int[] into) {
+        advance(now);
+        System.arraycopy(totals, 0, into, 0, totals.length);
+        return total;
+    }
+
+    /**
+     * 写出窗口内的全部计数,用于保存快照
+     *
+     * @param out 输出目标
+     * @throws IOException 写出失败
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeLong(currentSlot);
+        for (int[] slot : slots) {
+            for (int count : slot) {
+                out.writeInt(count);
+            }
+        }
+    }
+
+    /**
+     * 读取{@link #writeTo(DataOutput)}写出的计数,替换当前的全部计数
+     *
+     * @param in 输入,窗口的槽数和下标个数须与写出时相同
+     * @throws IOException 读取失败
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        currentSlot = in.readLong();
+        Arrays.fill(totals, 0);
+        total = 0;
+        for (int[] slot : slots) {
+            for (int i = 0; i < slot.length; i++) {
+                slot[i] = in.readInt();
+                totals[i] += slot[i];
+                total += slot[i];
+            }
+        }
+    }
+
+    /**
+     * 把窗口推进到now所在的时间槽,清空其间过期的槽
+     */
+    private void advance(long now) {
+        long slot = now / slotMillis;
+        if (slot <= currentSlot) {
+            return;
+        }
+        // 相隔超过一整个窗口时所有槽都已过期,最多清空一轮
+        long from = Math.max(currentSlot + 1, slot - slots.length + 1);
+        for (long s = from; s <= slot; s++) {
+            int[] expired = slots[(int) (s % slots.length)];
+            for (int i = 0; i < expired.length; i++) {
+                totals[i] -= expired[i];
+                total -= expired[i];
+                expired[i] = 0;
+            }
+        }
+        currentSlot = slot;
+    }
+}
@@ -0,0 +1,136 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 读取形如"[1.5]1-PRI-15-FROM-F1-TO-F3-BY-2"的带时间戳输入,
+ * 在时钟到达时间戳后才把去掉时间戳的一行交给读取方。
+ * 经{@link ReadableByteChannel}把输入成块读入一个64KB的缓冲区,直接在字节上查找换行和时间戳,
+ * 一行内容只复制一次到可复用的行缓冲区,除时间戳外不解码为字符串,也不会逐字节地等待或装箱;
+ * 每次read最多返回当前这一行
+ */
+class TimedInput extends InputStream {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final Clock clock;
+    // 时间戳早于该时刻(ms)的行不等待,从快照恢复时即快照时刻
+    private final long start;
+    // 当前行去掉时间戳后的内容,以换行结尾,只有前length个字节有效
+    private byte[] line = new byte[256];
+    private int length;
+    private int position;
+    private boolean eof;
+
+    TimedInput(InputStream in, Clock clock, long start) {
+        this.channel = Channels.newChannel(in);
+        this.buffer = ByteBuffer.allocate(1 << 16);
+        this.buffer.flip();
+        this.clock = clock;
+        this.start = start;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == length && !nextLine()) {
+            return -1;
+        }
+        return line[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        // 当前行已读完时才等待下一行,避免读取方在已有数据时被阻塞
+        if (position == length && !nextLine()) {
+            return -1;
+        }
+        int count = Math.min(len, length - position);
+        System.arraycopy(line, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean nextLine() throws IOException {
+        int end = findNewline();
+        if (end < 0) {
+            return false;
+        }
+        // 与readLine相同,去掉行尾的换行和回车
+        int from = buffer.position();
+        int next = end < buffer.limit() ? end + 1 : end;
+        if (end > from && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end > from && buffer.get(from) == '[') {
+            int close = from + 1;
+            while (close < end && buffer.get(close) != ']') {
+                close++;
+            }
+            if (close > from + 1 && close < end) {
+                String stamp = new String(buffer.array(), from + 1, close - from - 1,
+                        StandardCharsets.US_ASCII);
+                long arrival = (long) (Double.parseDouble(stamp) * 1000 + 0.5);
+                from = close + 1;
+                try {
+                    if (arrival >= start) {
+                        clock.sleep(arrival - clock.currentTimeMillis());
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        length = end - from + 1;
+        if (line.length < length) {
+            line = Arrays.copyOf(line, Math.max(length, line.length * 2));
+        }
+        buffer.position(from);
+        buffer.get(line, 0, end - from);
+        line[length - 1] = '\n';
+        buffer.position(next);
+        position = 0;
+        return true;
+    }
+
+    /**
+     * 在缓冲区中查找下一行的结尾,必要时从通道继续读入
+     *
+     * @return 换行符的下标;输入结束时的最后一行没有换行,返回缓冲区的limit;没有下一行时返回-1
+     */
+    private int findNewline() throws IOException {
+        int scanned = buffer.position();
+        while (true) {
+            for (; scanned < buffer.limit(); scanned++) {
+                if (buffer.get(scanned) == '\n') {
+                    return scanned;
+                }
+            }
+            if (eof) {
+                return buffer.hasRemaining() ? buffer.limit() : -1;
+            }
+            // 把未处理的部分移到缓冲区开头再继续读入
+            scanned -= buffer.position();
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Input line longer than " + buffer.capacity() + " bytes");
+            }
+            if (channel.read(buffer) < 0) {
+                eof = true;
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package utils;
+
+import utils.Building.ElevatorSpec;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 对照输入检查输出,并计算性能指标
+ * 输出逐行交给{@link #accept(String)},输入只在输出第一次提到某位乘客时才向后读取,
+ * 乘客送达后即丢弃,因此内存只与同时在途的乘客数有关。检查项包括:
+ * 时间戳不倒退;移动一层、开门到关门的间隔不短于电梯参数;开关门与移动的先后;
+ * 载客量;进出电梯的楼层与乘客所在位置、电梯所在楼层一致;出电梯的楼层是乘客的目的楼层;
+ * 结束时所有乘客都已送达、电梯门都已关上。
+ * 性能指标为运行总时间、按优先级加权的平均完成时间以及
+ * 耗电量(每次到达0.4、每次开门0.1、每次关门0.1)
+ */
+public class TraceChecker {
+    // 最多保留的错误描述条数,错误总数仍会全部计入
+    private static final int MAX_MESSAGES = 20;
+    private final BufferedReader input;
+    private final Car[] cars;
+    private final int minFloor;
+    private final int maxFloor;
+    // 已读入但尚未送达的乘客
+    private final HashMap<Integer, Request> requests;
+    private final List<String> messages;
+    private int errors;
+    private int passengers;
+    private int delivered;
+    private long lastTime;
+    // 已送达乘客的优先级之和以及优先级加权的完成时间之和
+    private long prioritySum;
+    private long weightedTime;
+    private long arrives;
+    private long opens;
+    private long closes;
+
+    /**
+     * @param input    带时间戳的输入,按时间顺序排列
+     * @param building 建筑,提供各电梯的移动时间、开关门时间和载客量
+     */
+    public TraceChecker(BufferedReader input, Building building) {
+        this.input = input;
+        this.minFloor = building.getMinFloor();
+        this.maxFloor = building.getMaxFloor();
+        List<ElevatorSpec> specs = building.getElevators();
+        this.cars = new Car[specs.size()];
+        for (int i = 0; i < cars.length; i++) {
+            cars[i] = new Car(specs.get(i));
+        }
+        this.requests = new HashMap<>();
+        this.messages = new ArrayList<>();
+    }
+
+    /**
+     * 检查一对输入、输出文件
+     *
+     * @param input  输入文件
+     * @param output 输出文件
+     * @return 检查结果
+     * @throws IOException 读取失败
+     */
+    public static Report check(Path input, Path output) throws IOException {
+        return check(input, output, checker -> { });
+    }
+
+    /**
+     * 检查一对输入、输出文件,检查之前先由prepare设置检查器,例如登记快照时刻的状态
+     *
+     * @param input   输入文件
+     * @param output  输出文件
+     * @param prepare 设置检查器的方法
+     * @return 检查结果
+     * @throws IOException 读取失败
+     */
+    public static Report check(Path input, Path output, Consumer<TraceChecker> prepare)
+            throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedReader out = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            TraceChecker checker = new TraceChecker(in, Building.getInstance());
+            prepare.accept(checker);
+            String line;
+            while ((line = out.readLine()) != null) {
+                checker.accept(line);
+            }
+            return checker.finish();
+        }
+    }
+
+    /**
+     * 用法: java utils.TraceChecker 输入文件 输出文件
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java utils.TraceChecker <input> <output>");
+            return;
+        }
+        try {
+            Report report = check(Paths.get(args[0]), Paths.get(args[1]));
+            System.out.println(report);
+            for (String message : report.getMessages()) {
+                System.out.println("  " + message);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 跳过输入中的前若干条请求,用于从快照时刻开始检查,须在检查任何输出之前调用
+     *
+     * @param count 跳过的请求数
+     */
+    public void skipRequests(int count) {
+        for (int i = 0; i < count; i++) {
+            if (readRequest() == null) {
+                return;
+            }
+            passengers--;
+        }
+        requests.clear();
+    }
+
+    /**
+     * 登记电梯在快照时刻的状态
+     *
+     * @param id       电梯ID
+     * @param floor    所在楼层
+     * @param doorOpen 门是否开着
+     * @param lastTime 最后一次到达或开关门的时刻,单位ms
+     * @param load     轿厢内的人数
+     */
+    public void resumeElevator(int id, int floor, boolean doorOpen, long lastTime, int load) {
+        Car car = cars[id - 1];
+        car.floor = floor;
+        car.doorOpen = doorOpen;
+        car.lastTime = lastTime;
+        car.load = load;
+        this.lastTime = Math.max(this.lastTime, lastTime);
+    }
+
+    /**
+     * 登记快照时刻尚未送达的乘客
+     *
+     * @param id         乘客ID
+     * @param arrival    请求到达的时刻,单位ms
+     * @param priority   优先级
+     * @param location   所在楼层,在电梯中时为进入电梯的楼层
+     * @param to         目的楼层
+     * @param elevatorId 所在电梯的ID,在楼层等待时为0
+     */
+    public void resumePassenger(int id, long arrival, int priority, int location, int to,
+                                int elevatorId) {
+        Request request = new Request(id, arrival, priority, location, to);
+        request.car = elevatorId == 0 ? null : cars[elevatorId - 1];
+        requests.put(id, request);
+        passengers++;
+    }
+
+    /**
+     * 检查一行输出
+     *
+     * @param line 形如"[   1.2340]ARRIVE-F2-1"的一行输出
+     */
+    public void accept(String line) {
+        int end = line.indexOf(']');
+        if (!line.startsWith("[") || end < 0) {
+            if (!line.trim().isEmpty()) {
+                error("malformed line: " + line);
+            }
+            return;
+        }
+        long time;
+        String[] parts = line.substring(end + 1).split("-");
+        try {
+            time = Math.round(Double.parseDouble(line.substring(1, end).trim()) * 1000);
+            if (time < lastTime) {
+                error("time goes backwards: " + line);
+            }
+            lastTime = Math.max(lastTime, time);
+            switch (parts[0]) {
+                case "ARRIVE":
+                    arrive(line, time, FloorConverter.floorString2Int(parts[1]), car(parts[2]));
+                    break;
+                case "OPEN":
+                    open(line, time, FloorConverter.floorString2Int(parts[1]), car(parts[2]));
+                    break;
+                case "CLOSE":
+                    close(line, time, FloorConverter.floorString2Int(parts[1]), car(parts[2]));
+                    break;
+                case "IN":
+                    in(line, time, Integer.parseInt(parts[1]),
+                            FloorConverter.floorString2Int(parts[2]), car(parts[3]));
+                    break;
+                case "OUT":
+                    out(line, time, Integer.parseInt(parts[1]),
+                            FloorConverter.floorString2Int(parts[2]), car(parts[3]));
+                    break;
+                default:
+                    error("unknown event: " + line);
+            }
+        } catch (RuntimeException e) {
+            error("malformed line: " + line);
+        }
+    }
+
+    /**
+     * 输出结束后检查是否有乘客未送达、电梯门未关,并汇总指标
+     *
+     * @return 检查结果
+     */
+    public Report finish() {
+        while (readRequest() != null) {
+            // 读完剩余的输入,它们都未被送达
+        }
+        for (Request request : requests.values()) {
+            error("passenger " + request.id + " left behind");
+            // 未送达的乘客按运行结束时刻计入完成时间
+            prioritySum += request.priority;
+            weightedTime += request.priority * (lastTime - request.arrival);
+        }
+        for (Car car : cars) {
+            if (car.doorOpen) {
+                error("elevator " + car.spec.getId() + " ends with its door open");
+            }
+        }
+        double power = arrives * 0.4 + opens * 0.1 + closes * 0.1;
+        double weighted = prioritySum == 0 ? 0 : weightedTime / 1000.0 / prioritySum;
+        return new Report(errors, messages, passengers, delivered, lastTime / 1000.0,
+                weighted, prioritySum, power);
+    }
+
+    private void arrive(String line, long time, int floor, Car car) {
+        arrives++;
+        if (car.doorOpen) {
+            error("move with door open: " + line);
+        }
+        // 快梯会经过不停靠的楼层,这里只检查是否超出建筑范围
+        if (floor < minFloor || floor > maxFloor) {
+            error("floor out of range: " + line);
+        }
+        if (FloorConverter.calFloorDistance(car.floor, floor) != 1) {
+            error("not an adjacent floor: " + line);
+        }
+        if (time - car.lastTime < car.spec.getMoveTime()) {
+            error("move too fast: " + line);
+        }
+        car.floor = floor;
+        car.lastTime = time;
+    }
+
+    private void open(String line, long time, int floor, Car car) {
+        opens++;
+        if (car.doorOpen) {
+            error("open twice: " + line);
+        }
+        if (floor != car.floor) {
+            error("open at wrong floor: " + line);
+        }
+        if (!car.spec.stopsAt(floor)) {
+            error("open at a floor the elevator does not serve: " + line);
+        }
+        car.doorOpen = true;
+        car.lastTime = time;
+    }
+
+    private void close(String line, long time, int floor, Car car) {
+        closes++;
+        if (!car.doorOpen) {
+            error("close without open: " + line);
+        }
+        if (floor != car.floor) {
+            error("close at wrong floor: " + line);
+        }
+        if (time - car.lastTime < car.spec.getDoorTime()) {
+            error("door closes too early: " + line);
+        }
+        car.doorOpen = false;
+        car.lastTime = time;
+    }
+
+    private void in(String line, long time, int id, int floor, Car car) {
+        Request request = require(id);
+        if (request == null) {
+            error("unknown passenger: " + line);
+            return;
+        }
+        if (!car.doorOpen || floor != car.floor) {
+            error("enter without open door at this floor: " + line);
+        }
+        if (request.car != null) {
+            error("enter twice: " + line);
+        }
+        if (floor != request.location) {
+            error("enter at a floor the passenger is not at: " + line);
+        }
+        if (time < request.arrival) {
+            error("enter before the request arrives: " + line);
+        }
+        if (++car.load > car.spec.getCapacity()) {
+            error("over capacity: " + line);
+        }
+        request.car = car;
+    }
+
+    private void out(String line, long time, int id, int floor, Car car) {
+        Request request = requests.get(id);
+        if (request == null || request.car != car) {
+            error("leave without entering: " + line);
+            return;
+        }
+        if (!car.doorOpen || floor != car.floor) {
+            error("leave without open door at this floor: " + line);
+        }
+        car.load--;
+        request.car = null;
+        // 电梯不做换乘,在目的楼层以外出电梯的乘客也按其实际位置继续检查,以免一个错误引出更多错误
+        request.location = floor;
+        if (floor != request.to) {
+            error("leave at a floor other than the destination: " + line);
+        } else {
+            requests.remove(id);
+            delivered++;
+            prioritySum += request.priority;
+            weightedTime += request.priority * (time - request.arrival);
+        }
+    }
+
+    private Car car(String id) {
+        return cars[Integer.parseInt(id) - 1];
+    }
+
+    /**
+     * 查找乘客,必要时继续读取输入,直到读到该乘客为止
+     */
+    private Request require(int id) {
+        Request request = requests.get(id);
+        while (request == null) {
+            Request next = readRequest();
+            if (next == null) {
+                return null;
+            }
+            if (next.id == id) {
+                request = next;
+            }
+        }
+        return request;
+    }
+
+    /**
+     * 读取下一条形如"[1.5]1-PRI-15-FROM-F1-TO-F3-BY-2"的请求
+     *
+     * @return 请求,输入结束时返回null
+     */
+    private Request readRequest() {
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                int end = line.indexOf(']');
+                if (!line.startsWith("[") || end < 0) {
+                    continue;
+                }
+                String[] parts = line.substring(end + 1).trim().split("-");
+                Request request = new Request(Integer.parseInt(parts[0]),
+                        Math.round(Double.parseDouble(line.substring(1, end).trim()) * 1000),
+                        Integer.parseInt(parts[2]), FloorConverter.floorString2Int(parts[4]),
+                        FloorConverter.floorString2Int(parts[6]));
+                if (requests.put(request.id, request) != null) {
+                    error("duplicate passenger id: " + line);
+                }
+                passengers++;
+                return request;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private void error(String message) {
+        errors++;
+        if (messages.size() < MAX_MESSAGES) {
+            messages.add(message);
+        }
+    }
+
+    private static final class Car {
+        private final ElevatorSpec spec;
+        private int floor;
+        // 上一次到达或开关门的时刻,单位ms
+        private long lastTime;
+        private boolean doorOpen;
+        private int load;
+
+        private Car(ElevatorSpec spec) {
+            this.spec = spec;
+            this.floor = spec.getInitFloor();
+        }
+    }
+
+    private static final class Request {
+        private final int id;
+        private final long arrival;
+        private final int priority;
+        private final int to;
+        // 乘客当前所在楼层,在电梯中时为进入时的楼层
+        private int location;
+        // 乘客所在的电梯,在楼层等待时为null
+        private Car car;
+
+        private Request(int id, long arrival, int priority, int from, int to) {
+            this.id = id;
+            this.arrival = arrival;
+            this.priority = priority;
+            this.to = to;
+            this.location = from;
+        }
+    }
+
+    /**
+     * 检查结果与性能指标
+     */
+    public static final class Report {
+        private final int errors;
+        private final List<String> messages;
+        private final int passengers;
+        private final int delivered;
+        private final double totalTime;
+        private final double weightedTime;
+        // 已结束乘客的优先级之和,即weightedTime的权重
+        private final long prioritySum;
+        private final double power;
+
+        private Report(int errors, List<String> messages, int passengers, int delivered,
+                       double totalTime, double weightedTime, long prioritySum, double power) {
+            this.errors = errors;
+            this.messages = messages;
+            this.passengers = passengers;
+            this.delivered = delivered;
+            this.totalTime = totalTime;
+            this.weightedTime = weightedTime;
+            this.prioritySum = prioritySum;
+            this.power = power;
+        }
+
+        /**
+         * 汇总同时运行的若干次模拟的结果,例如园区中的各个分区
+         * 错误数、乘客数和耗电量相加,T取最大值,WT按各自的优先级之和加权平均
+         *
+         * @param reports 各次模拟的结果
+         * @return 汇总结果
+         */
+        public static Report merge(List<Report> reports) {
+            int errors = 0;
+            List<String> messages = new ArrayList<>();
+            int passengers = 0;
+            int delivered = 0;
+            double totalTime = 0;
+            double weighted = 0;
+            long prioritySum = 0;
+            double power = 0;
+            for (Report report : reports) {
+                errors += report.errors;
+                messages.addAll(report.messages);
+                passengers += report.passengers;
+                delivered += report.delivered;
+                totalTime = Math.max(totalTime, report.totalTime);
+                weighted += report.weightedTime * report.prioritySum;
+                prioritySum += report.prioritySum;
+                power += report.power;
+            }
+            return new Report(errors, messages, passengers, delivered, totalTime,
+                    prioritySum == 0 ? 0 : weighted / prioritySum, prioritySum, power);
+        }
+
+        public boolean isValid() {
+            return errors == 0;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return 前若干条错误的描述
+         */
+        public List<String> getMessages() {
+            return messages;
+        }
+
+        public int getPassengers() {
+            return passengers;
+        }
+
+        public int getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * @return 最后一行输出的时间戳,单位s
+         */
+        public double getTotalTime() {
+            return totalTime;
+        }
+
+        /**
+         * @return 按优先级加权的平均完成时间,单位s
+         */
+        public double getWeightedTime() {
+            return weightedTime;
+        }
+
+        public double getPower() {
+            return power;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("errors=%d passengers=%d delivered=%d T=%.4f WT=%.4f power=%.1f",
+                    errors, passengers, delivered, totalTime, weightedTime, power);
+        }
+    }
+}
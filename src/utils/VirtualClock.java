@@ -0,0 +1,269 @@
+package utils;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于离散事件的虚拟时间时钟
+ * 每个受管理的线程在休眠时向事件队列登记一个唤醒事件,在park时登记为不活跃。
+ * 只有当所有受管理的线程都处于休眠或空闲等待时,时钟才会跳到最早的事件时刻,
+ * 并且每次只唤醒一个事件,因此同样的输入总会得到完全相同的输出
+ * <p>
+ * 内部使用ReentrantLock和每个事件各自的Condition等待,而不是synchronized与wait,
+ * 这样在虚拟线程上运行时等待不会占住载体线程,每次也只唤醒对应的那一个线程
+ */
+public class VirtualClock extends Clock {
+    private final ReentrantLock lock;
+    // 按(时刻, 登记顺序)排列的唤醒事件
+    private final PriorityQueue<Event> events;
+    // 各受管理线程的空闲等待状态
+    private final HashMap<Thread, Parking> parkings;
+    // 由setNextOrder指定的各线程下一次休眠的登记顺序
+    private final HashMap<Thread, Long> orders;
+    private final PrintStream out;
+    private final ReentrantLock outLock;
+    // 起始时刻,单位ms
+    private final long start;
+    // 当前虚拟时间,单位ms,只在持有lock时修改
+    private volatile long now;
+    // 正在运行(未休眠也未空闲等待)的受管理线程数
+    private int running;
+    private long sequence;
+
+    public VirtualClock(PrintStream out) {
+        this(out, 0, 0);
+    }
+
+    /**
+     * 从快照时刻开始计时的时钟
+     * 输入中时间戳早于起始时刻的行不再等待,立即交给读取方
+     *
+     * @param out      输出目标
+     * @param start    起始时刻,单位ms
+     * @param sequence 快照时的事件登记计数,见{@link #getSequence()}
+     */
+    public VirtualClock(PrintStream out, long start, long sequence) {
+        this.start = start;
+        this.now = start;
+        this.sequence = sequence;
+        this.lock = new ReentrantLock();
+        this.events = new PriorityQueue<>();
+        this.parkings = new HashMap<>();
+        this.orders = new HashMap<>();
+        this.out = out;
+        this.outLock = new ReentrantLock();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        lock.lock();
+        try {
+            Long order = orders.remove(Thread.currentThread());
+            Event event = new Event(now + Math.max(millis, 0),
+                    order == null ? sequence++ : order, lock.newCondition(), null);
+            event.thread = Thread.currentThread();
+            events.add(event);
+            running--;
+            advance();
+            while (!event.fired) {
+                event.wakeup.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void park() throws InterruptedException {
+        lock.lock();
+        try {
+            Parking parking = parkingOf(Thread.currentThread());
+            if (parking.permit) {
+                parking.permit = false;
+                return;
+            }
+            parking.parked = true;
+            running--;
+            advance();
+            // 唤醒事件触发时由时钟负责恢复running计数,这里只需等待标记
+            while (parking.parked) {
+                parking.wakeup.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            Parking parking = parkingOf(thread);
+            if (!parking.parked) {
+                parking.permit = true;
+            } else if (!parking.scheduled) {
+                // 不立即放行,而是在当前时刻登记一个唤醒事件,
+                // 保证同一时刻只有一个受管理的线程在运行
+                parking.scheduled = true;
+                events.add(new Event(now, sequence++, parking.wakeup, parking));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setNextOrder(long order) {
+        lock.lock();
+        try {
+            orders.put(Thread.currentThread(), order);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 下一个唤醒事件的登记顺序,随快照保存,恢复时传给构造方法
+     */
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 查询线程正在等待的休眠唤醒事件的登记顺序,随快照保存,恢复时交给{@link #setNextOrder(long)}
+     *
+     * @param thread 受管理的线程
+     * @return 登记顺序,该线程不在休眠中时为-1
+     */
+    public long getWakeOrder(Thread thread) {
+        lock.lock();
+        try {
+            for (Event event : events) {
+                if (event.thread == thread) {
+                    return event.sequence;
+                }
+            }
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        lock.lock();
+        try {
+            running++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void onExit() {
+        lock.lock();
+        try {
+            parkings.remove(Thread.currentThread());
+            running--;
+            advance();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected long printSync(String message) {
+        long timestamp = now;
+        outLock.lock();
+        try {
+            out.println(String.format("[%9.4f]%s", timestamp / 1000.0, message));
+            out.flush();
+        } finally {
+            outLock.unlock();
+        }
+        return timestamp;
+    }
+
+    @Override
+    public InputStream wrapInput(InputStream in) {
+        return new TimedInput(in, this, start);
+    }
+
+    private Parking parkingOf(Thread thread) {
+        return parkings.computeIfAbsent(thread, k -> new Parking(lock.newCondition()));
+    }
+
+    /**
+     * 所有受管理的线程都停下来时,推进到下一个事件并唤醒它的线程,调用方须持有lock
+     */
+    private void advance() {
+        if (running > 0 || events.isEmpty()) {
+            return;
+        }
+        Event event = events.poll();
+        now = Math.max(now, event.time);
+        if (event.parking != null) {
+            event.parking.parked = false;
+            event.parking.scheduled = false;
+        }
+        event.fired = true;
+        running++;
+        event.wakeup.signal();
+    }
+
+    private static final class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        // 事件触发时要唤醒的线程所等待的条件
+        private final Condition wakeup;
+        // 由unpark登记的唤醒事件对应的等待状态,休眠事件为null
+        private final Parking parking;
+        // 休眠事件所属的线程
+        private Thread thread;
+        private boolean fired;
+
+        private Event(long time, long sequence, Condition wakeup, Parking parking) {
+            this.time = time;
+            this.sequence = sequence;
+            this.wakeup = wakeup;
+            this.parking = parking;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class Parking {
+        private final Condition wakeup;
+        private boolean parked;
+        private boolean permit;
+        // 是否已登记了尚未触发的唤醒事件
+        private boolean scheduled;
+
+        private Parking(Condition wakeup) {
+            this.wakeup = wakeup;
+        }
+    }
+}